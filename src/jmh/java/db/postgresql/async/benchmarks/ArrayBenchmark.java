@@ -0,0 +1,73 @@
+package db.postgresql.async.benchmarks;
+
+import db.postgresql.async.pginfo.PgType;
+import java.nio.ByteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+//One dimensional array reads through PgType, the same path DataRow.arrayAt takes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class ArrayBenchmark {
+
+    @Param({ "16", "1024" })
+    public int size;
+
+    private PgType int4;
+    private PgType float8;
+    private PgType text;
+    private ByteBuffer ints;
+    private ByteBuffer doubles;
+    private ByteBuffer strings;
+
+    private static ByteBuffer write(final PgType pgType, final Object ary) {
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        pgType.write(buffer, ary);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Setup
+    public void setup() {
+        Canned.prepareThread();
+        int4 = Canned.REGISTRY.pgType(Canned.INT4);
+        float8 = Canned.REGISTRY.pgType(Canned.FLOAT8);
+        text = Canned.REGISTRY.pgType(Canned.TEXT);
+
+        final int[] intAry = new int[size];
+        final double[] doubleAry = new double[size];
+        final String[] stringAry = new String[size];
+        for(int i = 0; i < size; ++i) {
+            intAry[i] = i;
+            doubleAry[i] = i * 1.5d;
+            stringAry[i] = "element " + i;
+        }
+
+        ints = write(int4, intAry);
+        doubles = write(float8, doubleAry);
+        strings = write(text, stringAry);
+    }
+
+    @Benchmark
+    public Object intArray() {
+        ints.rewind();
+        return int4.read(ints, int4.getArrayId(), int.class);
+    }
+
+    @Benchmark
+    public Object integerArray() {
+        ints.rewind();
+        return int4.read(ints, int4.getArrayId(), Integer.class);
+    }
+
+    @Benchmark
+    public Object doubleArray() {
+        doubles.rewind();
+        return float8.read(doubles, float8.getArrayId(), double.class);
+    }
+
+    @Benchmark
+    public Object stringArray() {
+        strings.rewind();
+        return text.read(strings, text.getArrayId(), String.class);
+    }
+}
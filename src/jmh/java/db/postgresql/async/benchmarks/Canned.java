@@ -0,0 +1,95 @@
+package db.postgresql.async.benchmarks;
+
+import db.postgresql.async.Mapping;
+import db.postgresql.async.SessionInfo;
+import db.postgresql.async.messages.BackEnd;
+import db.postgresql.async.messages.RowDescription;
+import db.postgresql.async.pginfo.PgType;
+import db.postgresql.async.pginfo.PgTypeRegistry;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//Everything the benchmarks need without a server: a registry built from the default
+//mappings with the built in oids, and byte streams laid out like the backend sends them.
+public class Canned {
+
+    public static final int BOOL = 16;
+    public static final int INT8 = 20;
+    public static final int INT2 = 21;
+    public static final int INT4 = 23;
+    public static final int TEXT = 25;
+    public static final int FLOAT4 = 700;
+    public static final int FLOAT8 = 701;
+    public static final int DATE = 1082;
+    public static final int TIMESTAMP = 1114;
+    public static final int NUMERIC = 1700;
+
+    private static final int[][] OIDS = {
+        { BOOL, 1000 }, { INT8, 1016 }, { INT2, 1005 }, { INT4, 1007 }, { TEXT, 1009 },
+        { FLOAT4, 1021 }, { FLOAT8, 1022 }, { DATE, 1182 }, { TIMESTAMP, 1115 }, { NUMERIC, 1231 } };
+
+    private static final String[] NAMES = {
+        "pg_catalog.bool", "pg_catalog.int8", "pg_catalog.int2", "pg_catalog.int4", "pg_catalog.text",
+        "pg_catalog.float4", "pg_catalog.float8", "pg_catalog.date", "pg_catalog.timestamp", "pg_catalog.numeric" };
+
+    public static final PgTypeRegistry REGISTRY = registry();
+
+    private static PgTypeRegistry registry() {
+        final SessionInfo info = new SessionInfo.Builder().user("bench").database("bench").build();
+        final PgTypeRegistry ret = new PgTypeRegistry();
+        for(int i = 0; i < NAMES.length; ++i) {
+            for(Mapping mapping : info.getMappings()) {
+                if(mapping.name.equals(NAMES[i])) {
+                    ret.add(new PgType.Builder().oid(OIDS[i][0]).arrayId(OIDS[i][1]).mapping(mapping).build());
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    //benchmark threads need the same thread locals an IO thread would have
+    public static void prepareThread() {
+        SerializationContext.registry(REGISTRY);
+    }
+
+    public static ByteBuffer rowDescription(final int... oids) {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 + (oids.length * 64));
+        buffer.put((byte) 'T').putInt(0).putShort((short) oids.length);
+        for(int i = 0; i < oids.length; ++i) {
+            buffer.put(("c" + i).getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+            buffer.putInt(0).putShort((short) 0).putInt(oids[i]).putShort((short) -1).putInt(-1).putShort((short) 1);
+        }
+
+        buffer.putInt(1, buffer.position() - 1);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static RowDescription description(final int... oids) {
+        final ByteBuffer buffer = rowDescription(oids);
+        return (RowDescription) BackEnd.find(buffer.get(0)).builder.apply(buffer);
+    }
+
+    //rows copies of a DataRow holding values, written through the registry
+    public static ByteBuffer dataRows(final int rows, final Object... values) {
+        prepareThread();
+        final ByteBuffer one = ByteBuffer.allocate(65_536);
+        one.put((byte) 'D').putInt(0).putShort((short) values.length);
+        for(Object value : values) {
+            REGISTRY.pgType(value.getClass()).write(one, value);
+        }
+
+        one.putInt(1, one.position() - 1);
+        one.flip();
+
+        final ByteBuffer ret = ByteBuffer.allocate(one.remaining() * rows);
+        for(int i = 0; i < rows; ++i) {
+            ret.put(one.duplicate());
+        }
+
+        ret.flip();
+        return ret;
+    }
+}
@@ -0,0 +1,94 @@
+package db.postgresql.async.benchmarks;
+
+import db.postgresql.async.Row;
+import db.postgresql.async.messages.DataRow;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Binary extraction of each primitive type, every row holds one column of each
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OperationsPerInvocation(DataRowBenchmark.ROWS)
+public class DataRowBenchmark {
+
+    public static final int ROWS = 1_000;
+
+    private ByteBuffer stream;
+
+    @Setup
+    public void setup() {
+        Canned.prepareThread();
+        SerializationContext.description(Canned.description(Canned.BOOL, Canned.INT2, Canned.INT4, Canned.INT8,
+                                                            Canned.FLOAT4, Canned.FLOAT8, Canned.TEXT).toBinary());
+        stream = Canned.dataRows(ROWS, true, (short) 2, 4, 8L, 4.0f, 8.0d, "eight chars");
+    }
+
+    private interface Column {
+        void extract(Row.Extractor extractor, Blackhole bh);
+    }
+
+    private void rows(final Column column, final Blackhole bh) {
+        stream.rewind();
+        while(stream.hasRemaining()) {
+            final DataRow row = new DataRow(stream);
+            column.extract(row.extractor(), bh);
+            row.finish();
+        }
+    }
+
+    @Benchmark
+    public void booleanAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.booleanAt(0)), bh);
+    }
+
+    @Benchmark
+    public void shortAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.shortAt(1)), bh);
+    }
+
+    @Benchmark
+    public void intAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.intAt(2)), bh);
+    }
+
+    @Benchmark
+    public void longAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.longAt(3)), bh);
+    }
+
+    @Benchmark
+    public void floatAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.floatAt(4)), bh);
+    }
+
+    @Benchmark
+    public void doubleAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.doubleAt(5)), bh);
+    }
+
+    @Benchmark
+    public void stringAt(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.stringAt(6)), bh);
+    }
+
+    @Benchmark
+    public void lastColumnByName(final Blackhole bh) {
+        rows((e, b) -> b.consume(e.stringAt("c6")), bh);
+    }
+
+    @Benchmark
+    public void iterateAll(final Blackhole bh) {
+        stream.rewind();
+        while(stream.hasRemaining()) {
+            final DataRow row = new DataRow(stream);
+            final Row.Iterator iter = row.iterator();
+            while(iter.hasNext()) {
+                bh.consume(iter.next());
+            }
+
+            row.finish();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package db.postgresql.async.benchmarks;
+
+import db.postgresql.async.messages.Format;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.pginfo.Statement;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class FrontEndBenchmark {
+
+    private FrontEndMessage feMessage;
+    private Statement statement;
+    private List<Object> ints;
+    private List<Object> mixed;
+
+    @Setup
+    public void setup() {
+        Canned.prepareThread();
+        feMessage = new FrontEndMessage(StandardCharsets.UTF_8);
+        feMessage.buffer = ByteBuffer.allocate(65_536);
+        statement = new Statement("bench_statement");
+        ints = Arrays.asList(1, 2, 3, 4);
+        mixed = Arrays.asList(42, 42L, "some text value", new BigDecimal("12345.6789"),
+                              LocalDateTime.of(2016, 3, 12, 20, 9, 28), true, 3.14d);
+    }
+
+    private ByteBuffer bindExecuteSync(final List<Object> args) {
+        feMessage.buffer.clear();
+        feMessage.bindExecuteSync(statement, args, Format.BINARY);
+        return feMessage.buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer bindExecuteSyncInts() {
+        return bindExecuteSync(ints);
+    }
+
+    @Benchmark
+    public ByteBuffer bindExecuteSyncMixed() {
+        return bindExecuteSync(mixed);
+    }
+}
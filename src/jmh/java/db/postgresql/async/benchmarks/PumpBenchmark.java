@@ -0,0 +1,73 @@
+package db.postgresql.async.benchmarks;
+
+import db.postgresql.async.messages.BackEnd;
+import db.postgresql.async.messages.DataRow;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Response;
+import db.postgresql.async.serializers.SerializationContext;
+import db.postgresql.async.tasks.BaseTask;
+import java.nio.ByteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+//Framing cost only, every row is skipped with finish() so decoding doesn't show up
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OperationsPerInvocation(PumpBenchmark.ROWS)
+public class PumpBenchmark {
+
+    public static final int ROWS = 1_000;
+
+    private static class Sink extends BaseTask<Long> {
+        private long rows;
+
+        public void onStart(final FrontEndMessage fe, final ByteBuffer readBuffer) { }
+        public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) { }
+        public Long getResult() { return rows; }
+
+        public boolean process(final Response resp) {
+            ((DataRow) resp).finish();
+            ++rows;
+            return true;
+        }
+    }
+
+    @Param({ "1", "8" })
+    public int columns;
+
+    private ByteBuffer stream;
+    private Sink sink;
+
+    @Setup
+    public void setup() {
+        final Object[] values = new Object[columns];
+        final int[] oids = new int[columns];
+        for(int i = 0; i < columns; ++i) {
+            values[i] = i;
+            oids[i] = Canned.INT4;
+        }
+
+        Canned.prepareThread();
+        SerializationContext.description(Canned.description(oids).toBinary());
+        stream = Canned.dataRows(ROWS, values);
+        sink = new Sink();
+    }
+
+    @Benchmark
+    public int needs() {
+        stream.rewind();
+        int total = 0;
+        while(stream.hasRemaining() && BackEnd.needs(stream) == 0) {
+            total += stream.getInt(stream.position() + 1);
+            stream.position(stream.position() + 1 + stream.getInt(stream.position() + 1));
+        }
+
+        return total;
+    }
+
+    @Benchmark
+    public long pump() {
+        stream.rewind();
+        sink.pump(stream, sink::process);
+        return sink.getResult();
+    }
+}
@@ -0,0 +1,74 @@
+package db.postgresql.async.benchmarks;
+
+import db.postgresql.async.serializers.PostgresDateTime;
+import db.postgresql.async.serializers.PostgresNumeric;
+import db.postgresql.async.serializers.SerializationContext;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class SerializerBenchmark {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private final BigDecimal numeric = new BigDecimal("-1234567890.0987654321");
+    private final LocalDateTime timestamp = LocalDateTime.of(2016, 3, 12, 20, 9, 28, 123_456_000);
+    private final LocalDate date = LocalDate.of(2016, 3, 12);
+    private long pgTimestamp;
+    private long pgDate;
+    private ByteBuffer ascii;
+    private ByteBuffer multibyte;
+
+    @Setup
+    public void setup() {
+        Canned.prepareThread();
+        pgTimestamp = PostgresDateTime.toTimestamp(timestamp);
+        pgDate = PostgresDateTime.toDay(date);
+        ascii = ByteBuffer.wrap("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8));
+        multibyte = ByteBuffer.wrap("Gr\u00f6\u00dfenma\u00dfst\u00e4be f\u00fcr \u00dcbergr\u00f6\u00dfen,\u65e5\u672c\u8a9e\u306e\u30c6\u30ad\u30b9\u30c8".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public BigDecimal numericRoundTrip() {
+        buffer.clear();
+        new PostgresNumeric(numeric).toBuffer(buffer);
+        buffer.flip();
+        return new PostgresNumeric(buffer).toBigDecimal();
+    }
+
+    @Benchmark
+    public long timestampToPostgres() {
+        return PostgresDateTime.toTimestamp(timestamp);
+    }
+
+    @Benchmark
+    public LocalDateTime timestampFromPostgres() {
+        return PostgresDateTime.toLocalDateTime(pgTimestamp);
+    }
+
+    @Benchmark
+    public long dateToPostgres() {
+        return PostgresDateTime.toDay(date);
+    }
+
+    @Benchmark
+    public LocalDate dateFromPostgres() {
+        return PostgresDateTime.toLocalDate(pgDate);
+    }
+
+    @Benchmark
+    public String asciiToString() {
+        ascii.rewind();
+        return SerializationContext.bufferToString(ascii.remaining(), ascii);
+    }
+
+    @Benchmark
+    public String multibyteToString() {
+        multibyte.rewind();
+        return SerializationContext.bufferToString(multibyte.remaining(), multibyte);
+    }
+}
@@ -0,0 +1,14 @@
+package db.postgresql.async;
+
+import db.postgresql.async.messages.FrontEndMessage;
+
+//A task that never gives up its channel and keeps a read outstanding the whole time,
+//writes happen on the side whenever the task has something queued. Reads still go
+//through onRead/getNextState, onWrite is never called.
+public interface DuplexTask<T> extends CompletableTask<T> {
+
+    boolean hasWrites();
+
+    //fill the write buffer with as much queued output as fits, true if anything was written
+    boolean prepareWrite(FrontEndMessage fe);
+}
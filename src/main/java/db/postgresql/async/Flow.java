@@ -0,0 +1,25 @@
+package db.postgresql.async;
+
+//Mirrors java.util.concurrent.Flow, which isn't available on Java 8. Keeping the
+//same shape means adapting to the JDK or reactive-streams interfaces is a one liner.
+public final class Flow {
+
+    private Flow() { }
+
+    @FunctionalInterface
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+        void onNext(T item);
+        void onError(Throwable t);
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+        void cancel();
+    }
+}
@@ -1,6 +1,7 @@
 package db.postgresql.async;
 
 import db.postgresql.async.buffers.BufferOps;
+import db.postgresql.async.buffers.BufferPool;
 import db.postgresql.async.messages.BackEnd;
 import db.postgresql.async.messages.FrontEndMessage;
 import db.postgresql.async.messages.KeyData;
@@ -10,8 +11,10 @@ import db.postgresql.async.messages.Response;
 import db.postgresql.async.pginfo.StatementCache;
 import db.postgresql.async.serializers.SerializationContext;
 import db.postgresql.async.tasks.SslTask;
+import db.postgresql.async.tasks.StartupTask;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -20,11 +23,15 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -37,9 +44,12 @@ public class IO implements Comparable<IO> {
     private final SessionInfo sessionInfo;
     private final FrontEndMessage feMessage;
     private final AsynchronousSocketChannel channel;
-    private final StatementCache statementCache = new StatementCache();
+    private final StatementCache statementCache;
+    private final BufferPool bufferPool;
     private final ByteBuffer writeBuffer;
+    private final ByteBuffer baseReadBuffer;
     private ByteBuffer readBuffer;
+    private final AtomicBoolean closed = new AtomicBoolean();
     private final Map<String,String> parameterStatuses = new LinkedHashMap<>();
     private Notice lastNotice;
     private final Map<BackEnd,Consumer<Response>> oobHandlers = new EnumMap<>(BackEnd.class);
@@ -48,6 +58,18 @@ public class IO implements Comparable<IO> {
     private CompletableTask<?> currentTask;
     private Handler handler;
 
+    //A paused task has no read outstanding. resume() can come from any thread, if it
+    //shows up while the task is still running it leaves a wake up behind so the
+    //pause is skipped.
+    private static final int RUNNING = 0;
+    private static final int PAUSED = 1;
+    private static final int WAKE = 2;
+    private final AtomicInteger pauseState = new AtomicInteger(RUNNING);
+
+    //Duplex tasks read and write at the same time, writing says who owns the write buffer
+    private volatile DuplexTask<?> duplex;
+    private final AtomicBoolean writing = new AtomicBoolean();
+
     public int compareTo(final IO other) {
         if(creationTime < other.creationTime) {
             return -1;
@@ -93,8 +115,22 @@ public class IO implements Comparable<IO> {
     };
 
     public IO(final SessionInfo sessionInfo, final AsynchronousSocketChannel channel) {
-        this.writeBuffer = BufferOps.allocate(sessionInfo.getBufferSize(), sessionInfo.getDirectBuffers());
-        this.readBuffer =  BufferOps.allocate(sessionInfo.getBufferSize(), sessionInfo.getDirectBuffers());
+        this(sessionInfo, channel, new StatementCache.Stats());
+    }
+
+    public IO(final SessionInfo sessionInfo, final AsynchronousSocketChannel channel,
+              final StatementCache.Stats statementStats) {
+        this(sessionInfo, channel, statementStats,
+             new BufferPool(sessionInfo.getDirectBuffers(), sessionInfo.getBufferPoolSize()));
+    }
+
+    public IO(final SessionInfo sessionInfo, final AsynchronousSocketChannel channel,
+              final StatementCache.Stats statementStats, final BufferPool bufferPool) {
+        this.statementCache = new StatementCache(sessionInfo.getStatementCacheSize(), statementStats);
+        this.bufferPool = bufferPool;
+        this.writeBuffer = bufferPool.borrow(sessionInfo.getBufferSize());
+        this.baseReadBuffer = bufferPool.borrow(sessionInfo.getBufferSize());
+        this.readBuffer = baseReadBuffer;
         this.sessionInfo = sessionInfo;
         this.feMessage = new FrontEndMessage(sessionInfo.getEncoding());
         feMessage.buffer = writeBuffer;
@@ -106,35 +142,80 @@ public class IO implements Comparable<IO> {
 
     private void handler() {
         this.handler = new Handler();
-        if(sessionInfo.getSsl()) {
-            this.handler = new Handler();
-            this.pool = ResourcePool.nullPool();
-            CompletableTask<Boolean> sslTask = new SslTask().toCompletable();
-            this.currentTask = sslTask;
-            execute();
-            try {
-                final boolean val = sslTask.getFuture().get();
-                if(!val) {
-                    throw new UnsupportedOperationException("Ssl not supported by backend");
-                }
+    }
 
-                final SSLEngine engine = sessionInfo.getSslContext().createSSLEngine(sessionInfo.getHost(), sessionInfo.getPort());
-                engine.setUseClientMode(true);
-                try {
-                    engine.beginHandshake();
-                }
-                catch(SSLException e) {
-                    throw new RuntimeException(e);
-                }
-                final ByteBuffer sendBuffer = BufferOps.allocate(engine.getSession().getPacketBufferSize(), sessionInfo.getDirectBuffers());
-                final ByteBuffer recvBuffer = BufferOps.allocate(engine.getSession().getPacketBufferSize(), sessionInfo.getDirectBuffers());
+    //Asks for ssl if it is configured, then runs the startup task. Nothing blocks,
+    //each step is started when the previous task hands the channel back. The
+    //future completes once the channel is authenticated, the channel is then given
+    //to pool. A channel that fails along the way is closed and never reaches pool.
+    public CompletableFuture<IO> startup(final ResourcePool<IO> pool) {
+        final CompletableFuture<IO> ret = new CompletableFuture<>();
+        final StartupTask startupTask = new StartupTask(sessionInfo);
+        final ResourcePool<IO> starting = new Starting(ret) {
+                public void good(final IO io) {
+                    final CompletableFuture<KeyData> keyData = startupTask.getFuture();
+                    if(!keyData.isDone() || keyData.isCompletedExceptionally()) {
+                        final Throwable error = startupTask.getError();
+                        close();
+                        ret.completeExceptionally(error != null ? error : new IllegalStateException("Startup did not complete"));
+                        return;
+                    }
 
-                this.handler = new HandshakeSslHandler(engine, sendBuffer, recvBuffer, Mode.WRITE);
-            }
-            catch(InterruptedException | ExecutionException e) {
-                throw new RuntimeException(e);
-            }
+                    setKeyData(keyData.join());
+                    setPool(pool);
+                    ret.complete(io);
+                    pool.good(io);
+                } };
+
+        if(!sessionInfo.getSsl()) {
+            setPool(starting).execute(startupTask);
+            return ret;
+        }
+
+        final CompletableTask<Boolean> sslTask = new SslTask().toCompletable();
+        setPool(new Starting(ret) {
+                public void good(final IO io) {
+                    try {
+                        if(!sslTask.getFuture().join()) {
+                            throw new UnsupportedOperationException("Ssl not supported by backend");
+                        }
+
+                        final SSLEngine engine = sessionInfo.getSslContext().createSSLEngine(sessionInfo.getHost(), sessionInfo.getPort());
+                        engine.setUseClientMode(true);
+                        engine.beginHandshake();
+                        final ByteBuffer sendBuffer = BufferOps.allocate(engine.getSession().getPacketBufferSize(), sessionInfo.getDirectBuffers());
+                        final ByteBuffer recvBuffer = BufferOps.allocate(engine.getSession().getPacketBufferSize(), sessionInfo.getDirectBuffers());
+                        handler = new HandshakeSslHandler(engine, sendBuffer, recvBuffer, Mode.WRITE);
+                    }
+                    catch(Throwable t) {
+                        close();
+                        ret.completeExceptionally(t);
+                        return;
+                    }
+
+                    setPool(starting).execute(startupTask);
+                } }).execute(sslTask);
+
+        return ret;
+    }
+
+    //Holds the channel while it is being set up, failures only fail the startup future
+    private abstract static class Starting implements ResourcePool<IO> {
+        private final CompletableFuture<IO> future;
+
+        public Starting(final CompletableFuture<IO> future) {
+            this.future = future;
         }
+
+        public IO fast() {
+            return null;
+        }
+
+        public void bad(final IO io) {
+            future.completeExceptionally(new ClosedChannelException());
+        }
+
+        public void shutdown() { }
     }
 
     public SessionInfo getSessionInfo() {
@@ -144,12 +225,79 @@ public class IO implements Comparable<IO> {
     public boolean isOpen() {
         return channel.isOpen();
     }
+
+    //Asks the server to cancel whatever this channel is running. The request goes over
+    //a connection of its own, the future completes once the server has closed it, by
+    //then the cancel has been delivered to this channel's backend.
+    public CompletableFuture<Void> cancel() {
+        final KeyData key = keyData;
+        if(key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+                try(SocketChannel side = SocketChannel.open(sessionInfo.getSocketAddress())) {
+                    final FrontEndMessage fe = new FrontEndMessage(sessionInfo.getEncoding());
+                    fe.buffer = ByteBuffer.allocate(16);
+                    fe.cancel(key.getPid(), key.getSecretKey());
+                    fe.buffer.flip();
+                    while(fe.buffer.hasRemaining()) {
+                        side.write(fe.buffer);
+                    }
+
+                    fe.buffer.clear();
+                    while(side.read(fe.buffer) >= 0) {
+                        fe.buffer.clear();
+                    }
+                }
+                catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                } });
+    }
     
-    private void close() {
+    //true for the call that actually closed the channel
+    private boolean close() {
         try {
             channel.close();
         }
         catch(IOException ex) { }
+
+        if(closed.compareAndSet(false, true)) {
+            if(readBuffer != baseReadBuffer) {
+                bufferPool.giveBack(readBuffer);
+            }
+
+            bufferPool.giveBack(baseReadBuffer);
+            bufferPool.giveBack(writeBuffer);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    //Messages bigger than the channel's own buffer go into one borrowed from the
+    //pool, once what's left fits again the data moves back and the big one is returned
+    private void fitReadBuffer(final int needs) {
+        final int required = readBuffer.position() + needs;
+        if(required > readBuffer.capacity()) {
+            swapReadBuffer(bufferPool.borrow(required));
+        }
+        else if(readBuffer != baseReadBuffer && required < baseReadBuffer.capacity()) {
+            swapReadBuffer(baseReadBuffer);
+        }
+    }
+
+    private void swapReadBuffer(final ByteBuffer to) {
+        final ByteBuffer from = readBuffer;
+        from.flip();
+        to.clear();
+        to.put(from);
+        if(from != baseReadBuffer) {
+            bufferPool.giveBack(from);
+        }
+
+        readBuffer = to;
     }
 
     private enum Mode { READ, WRITE };
@@ -159,11 +307,17 @@ public class IO implements Comparable<IO> {
         public void failed(final Throwable ex, final Mode mode) {
             if(ex instanceof InterruptedByTimeoutException) {
                 currentTask.onTimeout(feMessage, readBuffer);
-                decide();
+                if(currentTask.getNextState().next != TaskState.Next.TERMINATE) {
+                    decide();
+                }
+                else if(close()) {
+                    //responses still on the way can't be told apart from the next task's
+                    pool.bad(IO.this);
+                }
             }
-            else {
+            else if(close()) {
+                //duplex channels can have a read and a write fail together
                 currentTask.onFail(ex);
-                close();
                 pool.bad(IO.this);
             }
         }
@@ -172,6 +326,10 @@ public class IO implements Comparable<IO> {
             if(writeBuffer.hasRemaining()) {
                 write();
             }
+            else if(duplex != null) {
+                writeBuffer.clear();
+                duplexWriteComplete();
+            }
             else {
                 writeBuffer.clear();
                 prepareThread();
@@ -181,6 +339,11 @@ public class IO implements Comparable<IO> {
         }
 
         public void readComplete(final Integer bytes) {
+            if(bytes < 0) {
+                failed(new EOFException(), Mode.READ);
+                return;
+            }
+            
             readBuffer.flip();
             prepareThread();
             currentTask.onRead(feMessage, readBuffer);
@@ -504,14 +667,21 @@ public class IO implements Comparable<IO> {
             decide();
         }
         else if(state.next == TaskState.Next.READ) {
-            readBuffer = BufferOps.ensure(readBuffer, state.needs);
+            fitReadBuffer(state.needs);
             handler.read();
         }
         else if(state.next == TaskState.Next.WRITE) {
             writeBuffer.flip();
             handler.write();
         }
+        else if(state.next == TaskState.Next.PAUSE) {
+            if(!pauseState.compareAndSet(RUNNING, PAUSED)) {
+                pauseState.set(RUNNING);
+                resumeRead();
+            }
+        }
         else if(state.next == TaskState.Next.FINISHED) {
+            fitReadBuffer(0);
             pool.good(this);
         }
         else if(state.next == TaskState.Next.TERMINATE) {
@@ -522,6 +692,57 @@ public class IO implements Comparable<IO> {
         }
     }
     
+    //Same as a read completing except nothing new came off the channel, the task
+    //picks up whatever it left in the read buffer when it paused
+    private void resumeRead() {
+        readBuffer.flip();
+        prepareThread();
+        currentTask.onRead(feMessage, readBuffer);
+        readBuffer.compact();
+        decide();
+    }
+
+    public void resume() {
+        while(true) {
+            final int state = pauseState.get();
+            if(state == PAUSED) {
+                if(pauseState.compareAndSet(PAUSED, RUNNING)) {
+                    resumeRead();
+                    return;
+                }
+            }
+            else if(state == WAKE || pauseState.compareAndSet(RUNNING, WAKE)) {
+                return;
+            }
+        }
+    }
+
+    //Sends whatever the duplex task has queued without touching the outstanding read.
+    //Callers that lose the race for the write buffer can leave, the current writer
+    //checks for more output when its write completes.
+    public void writeQueued() {
+        final DuplexTask<?> task = duplex;
+        if(task == null) {
+            return;
+        }
+
+        while(task.hasWrites() && writing.compareAndSet(false, true)) {
+            writeBuffer.clear();
+            if(task.prepareWrite(feMessage)) {
+                writeBuffer.flip();
+                handler.write();
+                return;
+            }
+
+            writing.set(false);
+        }
+    }
+
+    private void duplexWriteComplete() {
+        writing.set(false);
+        writeQueued();
+    }
+
     public void execute(final CompletableTask<?> task) {
         if(pool == null) {
             throw new IllegalStateException("Pool is null");
@@ -530,10 +751,14 @@ public class IO implements Comparable<IO> {
         if(!channel.isOpen()) {
             task.getFuture().completeExceptionally(new ClosedChannelException());
             pool.bad(this);
+            return;
         }
 
         this.currentTask = task;
+        this.duplex = (task instanceof DuplexTask) ? (DuplexTask<?>) task : null;
+        pauseState.set(RUNNING);
         execute();
+        writeQueued();
     }
 
     private void execute() {
@@ -0,0 +1,250 @@
+package db.postgresql.async;
+
+import db.postgresql.async.messages.Notification;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//Hands notifications to their consumers off of the IO thread. Every channel has its
+//own bounded queue which is drained on one of the stripes, a stripe being a single
+//thread picked by the hash of the channel name. Notifications on one channel are
+//always delivered in order, different channels on different stripes run in parallel.
+//When a channel's queue is full the overflow policy decides what gives.
+public class NotificationDispatcher {
+
+    public enum Overflow {
+        //throw away the oldest queued notification to make room
+        DROP_OLDEST,
+
+        //a notification whose payload is already queued is dropped, if the queue
+        //is still full after that the oldest is thrown away
+        COALESCE,
+
+        //nothing is dropped, the dedicated channel stops reading until a stripe makes
+        //room. No IO thread waits for that, only callers of dispatch() itself do.
+        BLOCK;
+    }
+
+    private static class Entry {
+        final Notification notification;
+        final Consumer<Notification> consumer;
+
+        public Entry(final Notification notification, final Consumer<Notification> consumer) {
+            this.notification = notification;
+            this.consumer = consumer;
+        }
+    }
+
+    private class ChannelQueue implements Runnable {
+        final ExecutorService stripe;
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        final Set<String> payloads = new HashSet<>();
+        boolean scheduled = false;
+        Runnable waiting;
+
+        public ChannelQueue(final String channel) {
+            this.stripe = stripes[(channel.hashCode() & Integer.MAX_VALUE) % stripes.length];
+        }
+
+        public synchronized int depth() {
+            return entries.size();
+        }
+
+        //false when a blocking queue is full, room runs once there is some
+        public synchronized boolean tryOffer(final Entry entry, final Runnable room) {
+            if(overflow == Overflow.BLOCK && entries.size() >= queueSize) {
+                waiting = room;
+                return false;
+            }
+
+            try {
+                offer(entry);
+            }
+            catch(InterruptedException e) {
+                //never waits when there is room
+            }
+
+            return true;
+        }
+
+        private synchronized Runnable takeWaiting() {
+            final Runnable ret = waiting;
+            waiting = null;
+            return ret;
+        }
+
+        public synchronized void offer(final Entry entry) throws InterruptedException {
+            final String payload = entry.notification.getPayload();
+            if(overflow == Overflow.COALESCE && payloads.contains(payload)) {
+                coalesced.incrementAndGet();
+                return;
+            }
+
+            while(entries.size() >= queueSize) {
+                if(overflow == Overflow.BLOCK) {
+                    wait();
+                }
+                else {
+                    remove(entries.poll());
+                    dropped.incrementAndGet();
+                }
+            }
+
+            entries.add(entry);
+            if(overflow == Overflow.COALESCE) {
+                payloads.add(payload);
+            }
+
+            if(!scheduled) {
+                scheduled = true;
+                stripe.execute(this);
+            }
+        }
+
+        private void remove(final Entry entry) {
+            if(overflow == Overflow.COALESCE) {
+                payloads.remove(entry.notification.getPayload());
+            }
+        }
+
+        private synchronized Entry next(final boolean more) {
+            final Entry entry = more ? entries.poll() : null;
+            if(entry == null) {
+                //out of work or out of turns, either way someone else has to reschedule
+                scheduled = false;
+                if(!more && !entries.isEmpty()) {
+                    scheduled = true;
+                    stripe.execute(this);
+                }
+
+                return null;
+            }
+
+            remove(entry);
+            notifyAll();
+            return entry;
+        }
+
+        //at most queueSize notifications per turn so channels sharing a stripe all get through
+        public void run() {
+            int count = 0;
+            Entry entry;
+            while((entry = next(count++ < queueSize)) != null) {
+                final Runnable room = takeWaiting();
+                if(room != null) {
+                    room.run();
+                }
+
+                try {
+                    entry.consumer.accept(entry.notification);
+                    delivered.incrementAndGet();
+                }
+                catch(Throwable t) {
+                    failed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private final ExecutorService[] stripes;
+    private final int queueSize;
+    private final Overflow overflow;
+    private final ConcurrentMap<String,ChannelQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public NotificationDispatcher(final int stripes, final int queueSize, final Overflow overflow,
+                                  final ThreadFactory factory) {
+        if(stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+
+        if(queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize must be positive");
+        }
+
+        if(overflow == null) {
+            throw new IllegalArgumentException("overflow must be specified");
+        }
+
+        this.stripes = new ExecutorService[stripes];
+        for(int i = 0; i < stripes; ++i) {
+            this.stripes[i] = Executors.newSingleThreadExecutor(factory);
+        }
+
+        this.queueSize = queueSize;
+        this.overflow = overflow;
+    }
+
+    public int getStripes() { return stripes.length; }
+    public int getQueueSize() { return queueSize; }
+    public Overflow getOverflow() { return overflow; }
+    public long getDispatched() { return dispatched.get(); }
+    public long getDelivered() { return delivered.get(); }
+    public long getDropped() { return dropped.get(); }
+    public long getCoalesced() { return coalesced.get(); }
+    public long getFailed() { return failed.get(); }
+
+    public int getDepth(final String channel) {
+        final ChannelQueue queue = queues.get(channel);
+        return queue == null ? 0 : queue.depth();
+    }
+
+    public int getDepth() {
+        int ret = 0;
+        for(ChannelQueue queue : queues.values()) {
+            ret += queue.depth();
+        }
+
+        return ret;
+    }
+
+    public void dispatch(final Notification notification, final Consumer<Notification> consumer) {
+        dispatched.incrementAndGet();
+        final ChannelQueue queue = queues.computeIfAbsent(notification.getChannel(), ChannelQueue::new);
+        try {
+            queue.offer(new Entry(notification, consumer));
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        }
+    }
+
+    //Never waits. With BLOCK and a full queue the notification is not taken, false comes
+    //back and room runs on a stripe thread once it can be offered again.
+    public boolean offer(final Notification notification, final Consumer<Notification> consumer,
+                         final Runnable room) {
+        final ChannelQueue queue = queues.computeIfAbsent(notification.getChannel(), ChannelQueue::new);
+        if(!queue.tryOffer(new Entry(notification, consumer), room)) {
+            return false;
+        }
+
+        dispatched.incrementAndGet();
+        return true;
+    }
+
+    public void shutdown() {
+        for(ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NotificationDispatcher(stripes: %d, queueSize: %d, overflow: %s, " +
+                             "dispatched: %d, delivered: %d, dropped: %d, coalesced: %d, failed: %d, depth: %d)",
+                             stripes.length, queueSize, overflow, getDispatched(), getDelivered(),
+                             getDropped(), getCoalesced(), getFailed(), getDepth());
+    }
+}
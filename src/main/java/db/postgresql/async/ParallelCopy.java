@@ -0,0 +1,275 @@
+package db.postgresql.async;
+
+import db.postgresql.async.tasks.CopyToServerTask;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+//One large COPY FROM STDIN input split into chunks that are copied over separate
+//channels at the same time. Text and csv files are split on line boundaries, binary
+//files on tuple boundaries with every chunk getting its own copy of the header and
+//trailer. Each chunk is its own COPY and commits on its own, a failed chunk does
+//not roll back the others. Quoted csv values containing newlines can't be split
+//safely, and neither can a csv header line since only the first chunk would have it.
+public class ParallelCopy {
+
+    private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+    private static final ByteBuffer NONE = ByteBuffer.allocate(0);
+    private static final long WINDOW = 64L * 1024L * 1024L;
+
+    public static class Chunk {
+        private final int index;
+        private final long start;
+        private final long end;
+        private volatile long rows;
+        private volatile Throwable error;
+
+        private Chunk(final int index, final long start, final long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getIndex() { return index; }
+        public long getStart() { return start; }
+        public long getEnd() { return end; }
+        public long getRows() { return rows; }
+        public Throwable getError() { return error; }
+
+        @Override
+        public String toString() {
+            return String.format("Chunk(index: %d, start: %d, end: %d, rows: %d, error: %s)",
+                                 index, start, end, rows, error);
+        }
+    }
+
+    private final File file;
+    private final boolean binary;
+    private final ByteBuffer prefix;
+    private final ByteBuffer suffix;
+    private final List<Chunk> chunks;
+
+    private ParallelCopy(final File file, final boolean binary, final ByteBuffer prefix,
+                         final ByteBuffer suffix, final long[] boundaries) {
+        this.file = file;
+        this.binary = binary;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        final List<Chunk> list = new ArrayList<>();
+        for(int i = 1; i < boundaries.length; ++i) {
+            if(boundaries[i] > boundaries[i - 1]) {
+                list.add(new Chunk(list.size(), boundaries[i - 1], boundaries[i]));
+            }
+        }
+
+        this.chunks = Collections.unmodifiableList(list);
+    }
+
+    public File getFile() { return file; }
+    public boolean isBinary() { return binary; }
+    public List<Chunk> getChunks() { return chunks; }
+
+    public long getRows() {
+        long ret = 0L;
+        for(Chunk chunk : chunks) {
+            ret += chunk.rows;
+        }
+
+        return ret;
+    }
+
+    public List<Chunk> getFailures() {
+        final List<Chunk> ret = new ArrayList<>();
+        for(Chunk chunk : chunks) {
+            if(chunk.error != null) {
+                ret.add(chunk);
+            }
+        }
+
+        return ret;
+    }
+
+    public boolean isSuccess() {
+        return getFailures().isEmpty();
+    }
+
+    public static ParallelCopy split(final File file, final int count) throws IOException {
+        if(count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(isBinary(channel)) {
+                return binary(file, channel, count);
+            }
+            else {
+                return text(file, channel, count);
+            }
+        }
+    }
+
+    //starts the COPY for every chunk, the IOPool decides how many run at once
+    public CompletableFuture<ParallelCopy> execute(final Session session, final String sql) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks.size()];
+        for(Chunk chunk : chunks) {
+            final FileChannel channel;
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            catch(IOException e) {
+                chunk.error = e;
+                futures[chunk.index] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+
+            final CopyToServerTask task = new CopyToServerTask.Mapped(sql, channel, chunk.start, chunk.end,
+                                                                      prefix, suffix);
+            futures[chunk.index] = session.execute(task).handle((bytes, t) -> {
+                    try {
+                        channel.close();
+                    }
+                    catch(IOException e) {
+                        //nothing more to do with it
+                    }
+
+                    if(t != null) {
+                        chunk.error = (t instanceof CompletionException) ? t.getCause() : t;
+                    }
+                    else {
+                        chunk.rows = task.getCommandStatus().getRows();
+                    }
+
+                    return null;
+                });
+        }
+
+        return CompletableFuture.allOf(futures).thenApply((v) -> this);
+    }
+
+    private static boolean isBinary(final FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(SIGNATURE.length);
+        while(buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) { }
+        return !buffer.hasRemaining() && Arrays.equals(buffer.array(), SIGNATURE);
+    }
+
+    private static ParallelCopy text(final File file, final FileChannel channel, final int count) throws IOException {
+        final long size = channel.size();
+        final long[] boundaries = new long[count + 1];
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for(int i = 1; i < count; ++i) {
+            boundaries[i] = nextLine(channel, buffer, Math.max(boundaries[i - 1], (size * i) / count), size);
+        }
+
+        boundaries[count] = size;
+        return new ParallelCopy(file, false, NONE, NONE, boundaries);
+    }
+
+    //position just past the first newline at or after from
+    private static long nextLine(final FileChannel channel, final ByteBuffer buffer,
+                                 final long from, final long size) throws IOException {
+        long position = from;
+        while(position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if(read <= 0) {
+                break;
+            }
+
+            for(int i = 0; i < read; ++i) {
+                if(buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+
+            position += read;
+        }
+
+        return size;
+    }
+
+    private static ParallelCopy binary(final File file, final FileChannel channel, final int count) throws IOException {
+        final long size = channel.size();
+        final Tuples tuples = new Tuples(channel, size);
+        final int extension = tuples.getInt(SIGNATURE.length + 4);
+        final long first = SIGNATURE.length + 8 + extension;
+        final ByteBuffer prefix = ByteBuffer.allocate((int) first);
+        while(prefix.hasRemaining() && channel.read(prefix, prefix.position()) > 0) { }
+        prefix.flip();
+        final ByteBuffer suffix = ByteBuffer.allocate(2);
+        suffix.putShort(0, (short) -1);
+
+        final long[] boundaries = new long[count + 1];
+        boundaries[0] = first;
+        long position = first;
+        int next = 1;
+        while(position + 2 <= size) {
+            final short fields = tuples.getShort(position);
+            if(fields == -1) {
+                break;
+            }
+
+            while(next < count && position >= first + ((size - first) * next) / count) {
+                boundaries[next++] = position;
+            }
+
+            position += 2;
+            for(int i = 0; i < fields; ++i) {
+                final int length = tuples.getInt(position);
+                position += 4 + Math.max(length, 0);
+            }
+        }
+
+        final long end = Math.min(position, size);
+        while(next <= count) {
+            boundaries[next++] = end;
+        }
+
+        return new ParallelCopy(file, true, prefix, suffix, boundaries);
+    }
+
+    //reads tuple headers through read only windows so a large file isn't read a
+    //few bytes at a time
+    private static class Tuples {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long start;
+
+        public Tuples(final FileChannel channel, final long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        private int at(final long position, final int length) throws IOException {
+            if(position + length > size) {
+                throw new IllegalArgumentException("Binary copy data is truncated at " + position);
+            }
+
+            if(window == null || position < start || position + length > start + window.limit()) {
+                start = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+            }
+
+            return (int) (position - start);
+        }
+
+        public short getShort(final long position) throws IOException {
+            final int index = at(position, 2);
+            return window.getShort(index);
+        }
+
+        public int getInt(final long position) throws IOException {
+            final int index = at(position, 4);
+            return window.getInt(index);
+        }
+    }
+}
@@ -2,14 +2,15 @@ package db.postgresql.async;
 
 public interface ResourcePool<T> {
     T fast();
-    T guaranteed();
     void good(T o);
     void bad(T o);
     void shutdown();
 
+    //false where a task waiting on a type lookup would be waiting on itself
+    default boolean resolvesTypes() { return true; }
+
     public static class NullPool<T> implements ResourcePool<T> {
         public T fast() { return null; }
-        public T guaranteed() { return null; };
         public void good(T o) { }
         public void bad(T o) { }
         public void shutdown() { }
@@ -46,6 +46,24 @@ public interface Row {
 
         Object arrayAt(String field, Class elementType);
         Object arrayAt(int field, Class elementType);
+
+        default int[] intArrayAt(String field) { return (int[]) arrayAt(field, int.class); }
+        default int[] intArrayAt(int field) { return (int[]) arrayAt(field, int.class); }
+
+        default long[] longArrayAt(String field) { return (long[]) arrayAt(field, long.class); }
+        default long[] longArrayAt(int field) { return (long[]) arrayAt(field, long.class); }
+
+        default double[] doubleArrayAt(String field) { return (double[]) arrayAt(field, double.class); }
+        default double[] doubleArrayAt(int field) { return (double[]) arrayAt(field, double.class); }
+
+        default float[] floatArrayAt(String field) { return (float[]) arrayAt(field, float.class); }
+        default float[] floatArrayAt(int field) { return (float[]) arrayAt(field, float.class); }
+
+        default short[] shortArrayAt(String field) { return (short[]) arrayAt(field, short.class); }
+        default short[] shortArrayAt(int field) { return (short[]) arrayAt(field, short.class); }
+
+        default boolean[] booleanArrayAt(String field) { return (boolean[]) arrayAt(field, boolean.class); }
+        default boolean[] booleanArrayAt(int field) { return (boolean[]) arrayAt(field, boolean.class); }
     }
 
     public interface Iterator extends java.util.Iterator<Object> {
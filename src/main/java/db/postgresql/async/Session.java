@@ -1,41 +1,55 @@
 package db.postgresql.async;
 
+import db.postgresql.async.buffers.BufferPool;
 import db.postgresql.async.messages.KeyData;
 import db.postgresql.async.pginfo.PgAttribute;
 import db.postgresql.async.pginfo.PgType;
 import db.postgresql.async.pginfo.PgTypeRegistry;
+import db.postgresql.async.pginfo.StatementCache;
 import db.postgresql.async.tasks.TransactionTask;
 import db.postgresql.async.tasks.NotificationTask;
+import db.postgresql.async.tasks.PipelineTask;
 import db.postgresql.async.tasks.SimpleTask;
 import db.postgresql.async.tasks.StartupTask;
+import db.postgresql.async.tasks.StreamTask;
 import db.postgresql.async.tasks.TerminateTask;
 import db.postgresql.async.messages.Notification;
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
@@ -68,42 +82,121 @@ public class Session {
         }
     }
 
+    //Idle channels and tasks waiting for a channel are kept in lock free queues.
+    //Whoever adds to one of them (a new task or a returning channel) calls dispatch()
+    //afterwards, so a task is never left waiting while a channel sits idle. A channel
+    //finishing a task picks up the next pending task directly on the IO thread.
     private class IOPool implements ResourcePool<IO> {
-        private final BlockingQueue<IO> queue = new PriorityBlockingQueue<>();
+        private final Deque<IO> idle = new ConcurrentLinkedDeque<>();
+        private final Queue<CompletableTask<?>> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicLong rejected = new AtomicLong();
         private final AtomicInteger total = new AtomicInteger();
         private volatile boolean shuttingDown = false;
         
-        private void add() {
-            if(shuttingDown) {
-                return;
+        private final AtomicInteger starting = new AtomicInteger();
+
+        //Channels handed back while this thread is already inside good(). A pending
+        //task can finish inside io.execute() (it fails in onStart), its channel waits
+        //here instead of calling back into good() one stack frame deeper each time.
+        private final ThreadLocal<Deque<IO>> returning = new ThreadLocal<>();
+
+        //Never blocks, the returned future completes when the new channel is ready.
+        //A failed attempt is retried after the back off.
+        private CompletableFuture<IO> add() {
+            while(true) {
+                if(shuttingDown) {
+                    return failed(shutdownError());
+                }
+
+                final int tmpTotal = total.get();
+                if(tmpTotal >= sessionInfo.getMaxChannels()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                if(total.compareAndSet(tmpTotal, tmpTotal + 1)) {
+                    break;
+                }
             }
 
-            int tmpTotal = total.get();
-            if(tmpTotal >= sessionInfo.getMaxChannels()) {
-                return;
+            starting.incrementAndGet();
+            return startupIO(this).whenComplete((io, t) -> {
+                    starting.decrementAndGet();
+                    if(t != null) {
+                        total.decrementAndGet();
+                        if(!shuttingDown) {
+                            scheduler.schedule(() -> add(), sessionInfo.getBackOff(), sessionInfo.getBackOffUnits());
+                        }
+                    } });
+        }
+
+        private void grow() {
+            if(total.get() < sessionInfo.getMaxChannels() &&
+               starting.get() < sessionInfo.getStartupConcurrency()) {
+                add();
             }
-            
-            try {
-                if(total.compareAndSet(tmpTotal, tmpTotal + 1)) {
-                    IO io = startupIO(this);
+        }
+
+        //Opens minChannels channels, at most startupConcurrency at a time. Completes
+        //when every first attempt has finished, exceptionally with the first failure
+        //if there were any. Failed channels keep retrying in the background.
+        private CompletableFuture<Void> warmUp() {
+            final int count = sessionInfo.getMinChannels();
+            final CompletableFuture<Void> ret = new CompletableFuture<>();
+            final AtomicInteger next = new AtomicInteger();
+            final AtomicInteger done = new AtomicInteger();
+            final AtomicReference<Throwable> error = new AtomicReference<>();
+            final Runnable[] startNext = new Runnable[1];
+            startNext[0] = () -> {
+                if(next.getAndIncrement() >= count) {
+                    return;
                 }
+
+                add().whenComplete((io, t) -> {
+                        if(t != null) {
+                            error.compareAndSet(null, t);
+                        }
+
+                        if(done.incrementAndGet() == count) {
+                            if(error.get() == null) {
+                                ret.complete(null);
+                            }
+                            else {
+                                ret.completeExceptionally(error.get());
+                            }
+                        }
+                        else {
+                            startNext[0].run();
+                        } });
+            };
+
+            if(count == 0) {
+                ret.complete(null);
             }
-            catch(IOException | InterruptedException | ExecutionException ex) {
-                total.decrementAndGet();
-                scheduler.schedule(() -> add(), sessionInfo.getBackOff(), sessionInfo.getBackOffUnits());
+
+            for(int i = 0; i < Math.min(count, sessionInfo.getStartupConcurrency()); ++i) {
+                startNext[0].run();
             }
+
+            return ret;
         }
 
         public void shutdown() {
             shuttingDown = true;
+            CompletableTask<?> task;
+            while((task = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                task.getFuture().completeExceptionally(shutdownError());
+            }
+            
             while(total.get() != 0) {
                 try {
-                    //Set timeout to not wait forever. It is possible that add() or
-                    //bad() operations were executed between shuttingDown was set to
-                    //false and we last got the total. This gives us a chance
-                    //to recount and decide if we need to continue.
-                    final IO io = queue.poll(100L, TimeUnit.MILLISECONDS);
+                    //In flight tasks still own their channels, wait for them to
+                    //come back through good() or bad(). Recount each time since add()
+                    //or bad() may have run after shuttingDown was set.
+                    final IO io = idle.pollFirst();
                     if(io == null) {
+                        Thread.sleep(10L);
                         continue;
                     }
 
@@ -113,8 +206,7 @@ public class Session {
                         continue;
                     }
                     
-                    final CompletableTask<Void> task = new TerminateTask().toCompletable();
-                    io.execute(task);
+                    io.execute(new TerminateTask().toCompletable());
                     total.decrementAndGet();
                 }
                 catch(InterruptedException ie) {
@@ -123,11 +215,6 @@ public class Session {
             }
         }
         
-        public IOPool() {
-            for(int i = 0; i < sessionInfo.getMinChannels(); ++i) {
-                add();
-            }
-        }
 
         private RuntimeException shutdownError() {
             return new RuntimeException("Session is shutting down, only in flight transactions will complete");
@@ -135,55 +222,107 @@ public class Session {
         
         public IO fast() {
             if(shuttingDown) {
-                shutdownError();
-            }
-            
-            final IO io = queue.poll();
-            if(io != null) {
-                return io;
+                throw shutdownError();
             }
             
-            if(total.get() < sessionInfo.getMaxChannels()) {
-                scheduler.submit(() -> add());
+            final IO io = idle.pollFirst();
+            if(io == null) {
+                grow();
             }
 
-            return null;
+            return io;
         }
 
-        public IO guaranteed() {
+        public void execute(final CompletableTask<?> task) {
             if(shuttingDown) {
-                throw shutdownError();
+                task.getFuture().completeExceptionally(shutdownError());
+                return;
             }
-            else {
-                try {
-                    return queue.take();
+
+            if(pending.isEmpty()) {
+                final IO io = idle.pollFirst();
+                if(io != null) {
+                    io.execute(task);
+                    return;
                 }
-                catch(InterruptedException ie) {
-                    throw new RuntimeException(ie);
+            }
+
+            if(pendingCount.incrementAndGet() > sessionInfo.getMaxPending()) {
+                pendingCount.decrementAndGet();
+                rejected.incrementAndGet();
+                task.getFuture().completeExceptionally(new RejectedExecutionException("Too many pending tasks, limit is " +
+                                                                                      sessionInfo.getMaxPending()));
+                return;
+            }
+
+            pending.offer(task);
+            grow();
+            dispatch();
+
+            if(shuttingDown && pending.remove(task)) {
+                pendingCount.decrementAndGet();
+                task.getFuture().completeExceptionally(shutdownError());
+            }
+        }
+
+        private void dispatch() {
+            while(!pending.isEmpty()) {
+                final IO io = idle.pollFirst();
+                if(io == null) {
+                    return;
                 }
+
+                final CompletableTask<?> task = pending.poll();
+                if(task == null) {
+                    idle.offerFirst(io);
+                    continue;
+                }
+
+                pendingCount.decrementAndGet();
+                io.execute(task);
             }
         }
         
         public void good(final IO io) {
+            final Deque<IO> nested = returning.get();
+            if(nested != null) {
+                nested.offerLast(io);
+                return;
+            }
+
+            final Deque<IO> returned = new ArrayDeque<>();
+            returning.set(returned);
             try {
-                queue.put(io);
+                IO next = io;
+                while(next != null) {
+                    handBack(next);
+                    next = returned.pollFirst();
+                }
+            }
+            finally {
+                returning.remove();
             }
-            catch(InterruptedException ie) {
-                throw new RuntimeException(ie);
+        }
+
+        private void handBack(final IO io) {
+            if(!shuttingDown) {
+                final CompletableTask<?> task = pending.poll();
+                if(task != null) {
+                    pendingCount.decrementAndGet();
+                    io.execute(task);
+                    return;
+                }
             }
+
+            idle.offerFirst(io);
+            dispatch();
         }
 
         public void bad(final IO io) {
             if(shuttingDown) {
                 //put it back in the pool, the cleanup operation won't re-close
                 //it but it needs to reclaim all outstanding io objects.
-                try {
-                    queue.put(io);
-                }
-                catch(InterruptedException ie) {
-                    throw new RuntimeException(ie);
-                }
-                
+                idle.offerFirst(io);
                 return;
             }
 
@@ -206,16 +345,9 @@ public class Session {
             throw new UnsupportedOperationException("You can't acquire IO channels from the dedicated pool");
         }
         
-        public IO guaranteed() {
-            return fast();
-        }
-        
         public void good(final IO o) {
             if(latch == null) {
-                final Runnable r = () -> io.setPool(this).execute(task);
-                scheduler.schedule(r,
-                                   sessionInfo.getNotificationsTimeout(),
-                                   sessionInfo.getNotificationsUnits());
+                o.setPool(this).execute(task);
             }
             else {
                 latch.countDown();
@@ -223,16 +355,18 @@ public class Session {
         }
 
         private void recover() {
-            try {
-                this.io = startupIO(this);
-            }
-            catch(IOException | InterruptedException | ExecutionException ex) {
-                scheduler.schedule(() -> recover(), sessionInfo.getBackOff(), sessionInfo.getBackOffUnits());
-            }
+            startupIO(this).whenComplete((o, t) -> {
+                    if(t != null) {
+                        scheduler.schedule(() -> recover(), sessionInfo.getBackOff(), sessionInfo.getBackOffUnits());
+                    }
+                    else {
+                        this.io = o;
+                    } });
         }
 
         public void bad(final IO io) {
             if(latch == null) {
+                task.relisten();
                 recover();
             }
             else {
@@ -244,35 +378,170 @@ public class Session {
             try {
                 latch = new CountDownLatch(1);
                 task.shutdown();
-                latch.await();
+                if(io != null && io.isOpen()) {
+                    latch.await();
+                }
             }
             catch(InterruptedException e) {}
         }
     }
 
+    //Lookups made while a task holds its channel (loading types the registry hasn't
+    //seen) can't wait for a pooled channel, every one of those could be waiting on
+    //the lookup. They run one at a time on a channel of their own, opened on first use.
+    private class Catalog implements ResourcePool<IO> {
+        private final Queue<CompletableTask<?>> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile IO io;
+        private volatile boolean shuttingDown = false;
+
+        public void execute(final CompletableTask<?> task) {
+            if(shuttingDown) {
+                task.getFuture().completeExceptionally(new RuntimeException("Session is shutting down"));
+                return;
+            }
+
+            pending.offer(task);
+            next();
+        }
+
+        private void next() {
+            while(!pending.isEmpty() && busy.compareAndSet(false, true)) {
+                final IO current = io;
+                if(current == null || !current.isOpen()) {
+                    //good() runs the first pending task once the channel is up
+                    startupIO(this).whenComplete((o, t) -> {
+                            if(t != null) {
+                                final CompletableTask<?> task = pending.poll();
+                                if(task != null) {
+                                    task.getFuture().completeExceptionally(t);
+                                }
+
+                                busy.set(false);
+                                next();
+                            } });
+                    return;
+                }
+
+                final CompletableTask<?> task = pending.poll();
+                if(task == null) {
+                    busy.set(false);
+                    continue;
+                }
+
+                current.execute(task);
+                return;
+            }
+        }
+
+        public IO fast() {
+            return null;
+        }
+
+        public boolean resolvesTypes() {
+            return false;
+        }
+
+        public void good(final IO o) {
+            io = o;
+            if(shuttingDown) {
+                o.execute(new TerminateTask().toCompletable());
+                io = null;
+                return;
+            }
+
+            final CompletableTask<?> task = pending.poll();
+            if(task != null) {
+                o.execute(task);
+                return;
+            }
+
+            busy.set(false);
+            next();
+        }
+
+        public void bad(final IO o) {
+            io = null;
+            busy.set(false);
+            next();
+        }
+
+        public void shutdown() {
+            shuttingDown = true;
+            CompletableTask<?> task;
+            while((task = pending.poll()) != null) {
+                task.getFuture().completeExceptionally(new RuntimeException("Session is shutting down"));
+            }
+
+            final IO current = io;
+            if(current != null && busy.compareAndSet(false, true)) {
+                io = null;
+                current.execute(new TerminateTask().toCompletable());
+            }
+        }
+    }
+
     private final SessionInfo sessionInfo;
     private final ExecutorService ioService;
     private final ScheduledExecutorService scheduler;
-    private final ExecutorService busyService;
     private final AsynchronousChannelGroup channelGroup;
     private final IOPool ioPool;
+    private final Catalog catalog = new Catalog();
     private final Dedicated dedicatedPool;
+    private final StatementCache.Stats statementStats = new StatementCache.Stats();
+    private final BufferPool bufferPool;
+    private final NotificationDispatcher notificationDispatcher;
     
+    private final CompletableFuture<Session> ready;
+
+    //Waits for the first attempt at every one of minChannels channels, use open()
+    //to get the session without waiting
     public Session(final SessionInfo sessionInfo) {
+        this(sessionInfo, true);
+    }
+
+    private Session(final SessionInfo sessionInfo, final boolean wait) {
         try {
             this.sessionInfo = sessionInfo;
+            this.bufferPool = new BufferPool(sessionInfo.getDirectBuffers(), sessionInfo.getBufferPoolSize());
             this.scheduler = Executors.newScheduledThreadPool(scheduledThreadCount(sessionInfo));
             this.ioService = new ThreadPoolExecutor(sessionInfo.getMinChannels(), sessionInfo.getMaxChannels(),
                                                     60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
                                                     new PrefixFactory("Session-IO-Pool"));
-            this.busyService = Executors.newSingleThreadExecutor(new PrefixFactory("Session-Busy-Pool"));
             this.channelGroup = AsynchronousChannelGroup.withThreadPool(ioService);
             this.ioPool = new IOPool();
+            this.ready = ioPool.warmUp().thenApply((v) -> this);
+            this.notificationDispatcher = notificationDispatcher();
             this.dedicatedPool = dedicatedPool();
         }
         catch(IOException ex) {
             throw new RuntimeException(ex);
         }
+
+        if(wait) {
+            try {
+                ready.join();
+            }
+            catch(CompletionException ex) {
+                //same as before, the pool keeps trying in the background
+            }
+        }
+    }
+
+    //The future completes once minChannels channels are connected and authenticated.
+    //Channels are opened in parallel, at most startupConcurrency at a time.
+    //If any of them can't be opened the future fails and the session is shut down.
+    public static CompletableFuture<Session> open(final SessionInfo sessionInfo) {
+        final Session session = new Session(sessionInfo, false);
+        return session.ready.whenComplete((s, t) -> {
+                if(t != null) {
+                    //shutdown waits for channels still starting, so not on an IO thread
+                    CompletableFuture.runAsync(session::shutdown);
+                } });
+    }
+
+    public CompletableFuture<Session> ready() {
+        return ready;
     }
 
     private static int scheduledThreadCount(final SessionInfo sessionInfo) {
@@ -286,7 +555,7 @@ public class Session {
 
     private Dedicated dedicatedPool() {
         if(sessionInfo.getNotifications()) {
-            Dedicated d =  new Dedicated(new NotificationTask());
+            Dedicated d =  new Dedicated(new NotificationTask(notificationDispatcher));
             d.recover();
             return d;
         }
@@ -295,15 +564,59 @@ public class Session {
         }
     }
 
-    private IO startupIO(final ResourcePool<IO> pool) throws IOException, InterruptedException, ExecutionException {
-        final AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(channelGroup);
-        channel.connect(sessionInfo.getSocketAddress()).get();
-        final IO io = new IO(sessionInfo, channel);
-        final CompletableTask<KeyData> startupTask = new StartupTask(sessionInfo);
-        io.setPool(pool).execute(startupTask);
-        KeyData keyData = startupTask.getFuture().get();
-        io.setKeyData(keyData);
-        return io;
+    private NotificationDispatcher notificationDispatcher() {
+        if(sessionInfo.getNotifications() && sessionInfo.getNotificationStripes() > 0) {
+            return new NotificationDispatcher(sessionInfo.getNotificationStripes(), sessionInfo.getNotificationQueueSize(),
+                                              sessionInfo.getNotificationOverflow(), new PrefixFactory("Session-Notifications"));
+        }
+        else {
+            return null;
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable t) {
+        final CompletableFuture<T> ret = new CompletableFuture<>();
+        ret.completeExceptionally(t);
+        return ret;
+    }
+
+    private CompletableFuture<IO> startupIO(final ResourcePool<IO> pool) {
+        final AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open(channelGroup);
+        }
+        catch(IOException ex) {
+            return failed(ex);
+        }
+
+        final CompletableFuture<IO> ret = new CompletableFuture<>();
+        channel.connect(sessionInfo.getSocketAddress(), null, new CompletionHandler<Void,Void>() {
+                public void completed(final Void result, final Void attachment) {
+                    try {
+                        new IO(sessionInfo, channel, statementStats, bufferPool).startup(pool).whenComplete((io, t) -> {
+                                if(t != null) {
+                                    ret.completeExceptionally(t);
+                                }
+                                else {
+                                    ret.complete(io);
+                                } });
+                    }
+                    catch(Throwable t) {
+                        failed(t, attachment);
+                    }
+                }
+
+                public void failed(final Throwable t, final Void attachment) {
+                    try {
+                        channel.close();
+                    }
+                    catch(IOException ex) { }
+
+                    ret.completeExceptionally(t);
+                }
+            });
+
+        return ret;
     }
 
     public SessionInfo getSessionInfo() {
@@ -313,29 +626,48 @@ public class Session {
     public void shutdown() {
         scheduler.shutdown();
         ioPool.shutdown();
+        catalog.shutdown();
         if(dedicatedPool != null) {
             dedicatedPool.shutdown();
         }
+
+        if(notificationDispatcher != null) {
+            notificationDispatcher.shutdown();
+        }
     }
 
     public int getIoCount() {
         return ioPool.total.get();
     }
 
+    public int getPendingCount() {
+        return ioPool.pendingCount.get();
+    }
+
+    public long getRejectedCount() {
+        return ioPool.rejected.get();
+    }
+
+    public StatementCache.Stats getStatementCacheStats() {
+        return statementStats;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    //null unless notifications are dispatched off of the IO thread
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
     public <T> CompletableFuture<T> execute(final CompletableTask<T> task) {
         if(task.isExecuted()) {
             throw new IllegalStateException("Task has already been executed");
         }
 
         task.executed();
-        final IO io = ioPool.fast();
-        if(io != null) {
-            io.setPool(ioPool).execute(task);
-        }
-        else {
-            busyService.execute(() -> ioPool.guaranteed().setPool(ioPool).execute(task));
-        }
-        
+        ioPool.execute(task);
         return task.getFuture();
     }
 
@@ -355,6 +687,48 @@ public class Session {
         return execute(builder.build());
     }
 
+    //Runs on the session's catalog channel instead of the pool, for lookups made by
+    //tasks that are holding a channel themselves
+    public <T> CompletableFuture<T> catalog(final Task<T> task) {
+        final CompletableTask<T> completable = task.toCompletable();
+        if(completable.isExecuted()) {
+            throw new IllegalStateException("Task has already been executed");
+        }
+
+        completable.executed();
+        catalog.execute(completable);
+        return completable.getFuture();
+    }
+
+    public CompletableFuture<List<Object>> pipeline(final List<? extends Task<?>> tasks) {
+        return execute(new PipelineTask(tasks));
+    }
+
+    //Cold publisher, every subscriber runs the query on its own channel
+    public Flow.Publisher<Row> stream(final String sql, final List<Object> args) {
+        return (subscriber) -> {
+            final StreamTask task = Task.Prepared.stream(sql, args, subscriber);
+            execute(task).whenComplete((rows, t) -> task.signalDone(t));
+        };
+    }
+
+    public Flow.Publisher<Row> stream(final String sql) {
+        return stream(sql, Task.Prepared.NO_ARGS);
+    }
+
+    //copies chunks of one input file over as many channels as the pool allows, the
+    //result has the total row count and whichever chunks failed
+    public CompletableFuture<ParallelCopy> copyParallel(final String sql, final File file, final int chunks) {
+        try {
+            return ParallelCopy.split(file, chunks).execute(this, sql);
+        }
+        catch(IOException | RuntimeException e) {
+            final CompletableFuture<ParallelCopy> ret = new CompletableFuture<>();
+            ret.completeExceptionally(e);
+            return ret;
+        }
+    }
+
     public CompletableFuture<Void> listen(final String channel, final Consumer<Notification> consumer) {
         if(dedicatedPool == null) {
             throw new UnsupportedOperationException("Notifications are not configured for this session");
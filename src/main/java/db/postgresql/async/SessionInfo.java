@@ -81,6 +81,12 @@ public class SessionInfo {
     private final TimeUnit backOffUnits;
     public TimeUnit getBackOffUnits() { return backOffUnits; }
 
+    private final int maxPending;
+    public int getMaxPending() { return maxPending; }
+
+    private final int startupConcurrency;
+    public int getStartupConcurrency() { return startupConcurrency; }
+
     public SocketAddress getSocketAddress() {
         return new InetSocketAddress(host, port);
     }
@@ -99,22 +105,55 @@ public class SessionInfo {
 
     private final long notificationsTimeout;
 
+    //notifications are pushed as they arrive, nothing polls on a timeout anymore
+    @Deprecated
     public long getNotificationsTimeout() {
         return notificationsTimeout;
     }
 
     private final TimeUnit notificationsUnits;
 
+    @Deprecated
     public TimeUnit getNotificationsUnits() {
         return notificationsUnits;
     }
 
+    private final int notificationStripes;
+
+    public int getNotificationStripes() {
+        return notificationStripes;
+    }
+
+    private final int notificationQueueSize;
+
+    public int getNotificationQueueSize() {
+        return notificationQueueSize;
+    }
+
+    private final NotificationDispatcher.Overflow notificationOverflow;
+
+    public NotificationDispatcher.Overflow getNotificationOverflow() {
+        return notificationOverflow;
+    }
+
     public final int bufferSize;
 
     public int getBufferSize() {
         return bufferSize;
     }
 
+    public final long bufferPoolSize;
+
+    public long getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public final int statementCacheSize;
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
     public boolean directBuffers;
 
     public boolean getDirectBuffers() {
@@ -150,13 +189,20 @@ public class SessionInfo {
         this.maxChannels = builder.maxChannels;
         this.backOff = builder.backOff;
         this.backOffUnits = builder.backOffUnits;
+        this.maxPending = builder.maxPending;
+        this.startupConcurrency = builder.startupConcurrency;
         this.registry = builder.registry;
         this.mappings = Collections.unmodifiableList(builder.mappings);
         this.notifications = builder.notifications;
         this.notificationsTimeout = builder.notificationsTimeout;
         this.notificationsUnits = builder.notificationsUnits;
+        this.notificationStripes = builder.notificationStripes;
+        this.notificationQueueSize = builder.notificationQueueSize;
+        this.notificationOverflow = builder.notificationOverflow;
         this.bufferSize = builder.bufferSize;
         this.directBuffers = builder.directBuffers;
+        this.statementCacheSize = builder.statementCacheSize;
+        this.bufferPoolSize = builder.bufferPoolSize;
     }
 
     public static class Builder {
@@ -175,12 +221,19 @@ public class SessionInfo {
         private int maxChannels = 1;
         private long backOff = 60L;
         private TimeUnit backOffUnits = TimeUnit.SECONDS;
+        private int maxPending = 10_000;
+        private int startupConcurrency = 8;
         private PgTypeRegistry registry = new PgTypeRegistry();
         private boolean notifications = false;
         private long notificationsTimeout = 1L;
         private TimeUnit notificationsUnits = TimeUnit.SECONDS;
+        private int notificationStripes = 0;
+        private int notificationQueueSize = 1_024;
+        private NotificationDispatcher.Overflow notificationOverflow = NotificationDispatcher.Overflow.BLOCK;
         private int bufferSize = 32_768;
         private boolean directBuffers = true;
+        private int statementCacheSize = 256;
+        private long bufferPoolSize = 33_554_432L;
         private SSLContext sslContext = null;
 
         public void addDefaultMappings() {
@@ -360,6 +413,25 @@ public class SessionInfo {
             return this;
         }
 
+        //how many channels may be connecting and authenticating at the same time
+        public Builder startupConcurrency(final int val) {
+            if(val <= 0) {
+                throw new IllegalArgumentException("startupConcurrency must be positive");
+            }
+
+            this.startupConcurrency = val;
+            return this;
+        }
+
+        public Builder maxPending(final int val) {
+            if(val < 0) {
+                throw new IllegalArgumentException("maxPending must be >= 0");
+            }
+
+            this.maxPending = val;
+            return this;
+        }
+
         public Builder registry(final PgTypeRegistry val) {
             this.registry = val;
             return this;
@@ -382,12 +454,36 @@ public class SessionInfo {
             return this;
         }
 
+        //ignored, notifications are pushed as they arrive
+        @Deprecated
         public Builder notificationsTimeout(final long val, final TimeUnit units) {
             this.notificationsTimeout = val;
             this.notificationsUnits = units;
             return this;
         }
 
+        //run notification consumers on stripe threads instead of the IO thread, each
+        //channel queues at most queueSize notifications, 0 stripes turns this off
+        public Builder notificationDispatch(final int stripes, final int queueSize,
+                                            final NotificationDispatcher.Overflow overflow) {
+            if(stripes < 0) {
+                throw new IllegalArgumentException("stripes must be >= 0");
+            }
+
+            if(queueSize <= 0) {
+                throw new IllegalArgumentException("queueSize must be positive");
+            }
+
+            if(overflow == null) {
+                throw new IllegalArgumentException("overflow must be specified");
+            }
+
+            this.notificationStripes = stripes;
+            this.notificationQueueSize = queueSize;
+            this.notificationOverflow = overflow;
+            return this;
+        }
+
         public Builder bufferSize(final int val) {
             this.bufferSize = val;
             return this;
@@ -398,6 +494,26 @@ public class SessionInfo {
             return this;
         }
 
+        //maximum number of prepared statements kept per channel, 0 for no limit
+        public Builder statementCacheSize(final int val) {
+            if(val < 0) {
+                throw new IllegalArgumentException("statementCacheSize must be >= 0");
+            }
+
+            this.statementCacheSize = val;
+            return this;
+        }
+
+        //maximum number of bytes kept in the session's free buffers
+        public Builder bufferPoolSize(final long val) {
+            if(val < 0L) {
+                throw new IllegalArgumentException("bufferPoolSize must be >= 0");
+            }
+
+            this.bufferPoolSize = val;
+            return this;
+        }
+
         public SessionInfo build() {
             if(user == null) {
                 throw new IllegalStateException("You must specify a user");
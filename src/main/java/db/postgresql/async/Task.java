@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -44,6 +45,20 @@ public interface Task<T> {
     default boolean isTerminal() {
         return false;
     }
+
+    //True once the task has written everything it is going to write and will only
+    //read from here on out. Pipelining uses this to decide if the next task can be
+    //written before this one has seen its responses.
+    default boolean isSingleFlight() {
+        return false;
+    }
+
+    //True when everything the task writes before it starts reading is already in the
+    //write buffer, so a pipeline can put the next task's frames right behind it
+    //instead of flushing first.
+    default boolean isWritten() {
+        return false;
+    }
     
     default CompletableTask<T> toCompletable() {
         if(this instanceof CompletableTask) {
@@ -109,6 +124,11 @@ public interface Task<T> {
             return new ExecuteTask.BulkExecute(sql, args);
         }
 
+        //one Sync for all of args, so the batch commits or fails as a whole
+        static Task<int[]> batch(final String sql, final List<List<Object>> args) {
+            return new BatchTask(sql, args);
+        }
+
         static Task<Void> acceptRows(final String sql, final Consumer<Row> processor) {
             return acceptRows(sql, NO_ARGS, processor);
         }
@@ -131,6 +151,20 @@ public interface Task<T> {
             return new ExecuteTask<>(sql, Collections.singletonList(args), accumulator, processor);
         }
 
+        static <T> Task<T> fetch(final String sql, final List<Object> args, final int fetchSize,
+                                 final T accumulator, final BiFunction<T,Row,T> processor) {
+            return new PortalTask<>(sql, args, fetchSize, accumulator, processor);
+        }
+
+        static Task<Void> fetch(final String sql, final List<Object> args, final int fetchSize, final Consumer<Row> processor) {
+            final BiFunction<Void,Row,Void> biFunc = (no,row) -> { processor.accept(row); return null; };
+            return fetch(sql, args, fetchSize, null, biFunc);
+        }
+
+        static StreamTask stream(final String sql, final List<Object> args, final Flow.Subscriber<? super Row> subscriber) {
+            return new StreamTask(sql, args, subscriber);
+        }
+
         static Task<Void> rollback() {
             return AnonymousTask.rollback();
         }
@@ -161,14 +195,35 @@ public interface Task<T> {
             }
         }
 
+        //sql is a COPY ... TO STDOUT (FORMAT binary), columns maps each column name to its
+        //Java type in the order COPY returns them. Only a LinkedHashMap or a SortedMap has
+        //that order, any other map is rejected.
+        static <T> Task<T> fromServer(final String sql, final Map<String,Class<?>> columns,
+                                      final T accumulator, final BiFunction<T,Row,T> processor) {
+            return new CopyRowsFromServerTask<>(sql, columns, accumulator, processor);
+        }
+
+        static Task<Void> fromServer(final String sql, final Map<String,Class<?>> columns, final Consumer<Row> processor) {
+            return fromServer(sql, columns, null, (no,row) -> { processor.accept(row); return null; });
+        }
+
         static Task<Long> toServer(final String sql, final ReadableByteChannel channel) {
             return new CopyToServerTask(sql, channel);
         }
 
+        //rows of Java objects in the binary COPY format, the sql must say "with (format binary)"
+        static Task<Long> toServer(final String sql, final Iterator<? extends List<?>> rows) {
+            return new CopyToServerTask.Binary(sql, rows);
+        }
+
+        static Task<Long> toServer(final String sql, final Iterable<? extends List<?>> rows) {
+            return toServer(sql, rows.iterator());
+        }
+
         static Task<Long> toServer(final String sql, final File file) {
             try {
                 final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
-                return toServer(sql, channel);
+                return new CopyToServerTask.Mapped(sql, channel);
             }
             catch(IOException ioe) {
                 throw new RuntimeException(ioe);
@@ -183,4 +238,8 @@ public interface Task<T> {
     static <T> TransactionTask.Builder<T> transaction(final T a) {
         return new TransactionTask.Builder<T>().accumulator(a);
     }
+
+    static PipelineTask pipeline(final List<? extends Task<?>> tasks) {
+        return new PipelineTask(tasks);
+    }
 }
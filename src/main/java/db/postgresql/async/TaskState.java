@@ -2,7 +2,7 @@ package db.postgresql.async;
 
 public class TaskState {
 
-    public enum Next { START, READ, WRITE, FINISHED, TERMINATE };
+    public enum Next { START, READ, WRITE, PAUSE, FINISHED, TERMINATE };
     
     public final int needs;
     public final Next next;
@@ -10,6 +10,7 @@ public class TaskState {
     private static final TaskState START = new TaskState(Next.START, -1);
     private static final TaskState READ = new TaskState(Next.READ, 0);
     private static final TaskState WRITE = new TaskState(Next.WRITE, 0);
+    private static final TaskState PAUSE = new TaskState(Next.PAUSE, -1);
     private static final TaskState FINISHED = new TaskState(Next.FINISHED, -1);
     private static final TaskState TERMINATE = new TaskState(Next.TERMINATE, -1);
 
@@ -34,6 +35,11 @@ public class TaskState {
         return WRITE;
     }
 
+    //Task can't make progress until someone calls IO.resume(), no read is issued
+    public static TaskState pause() {
+        return PAUSE;
+    }
+
     public static TaskState finished() {
         return FINISHED;
     }
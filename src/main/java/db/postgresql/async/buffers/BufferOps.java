@@ -1,8 +1,6 @@
 package db.postgresql.async.buffers;
 
 import java.nio.ByteBuffer;
-import java.util.function.Consumer;
-import java.nio.BufferOverflowException;
 
 public class BufferOps {
 
@@ -49,39 +47,24 @@ public class BufferOps {
     }    
 
     public static final int nextAllocation(final int size) {
+        return ALLOWED[sizeClass(size)];
+    }
+
+    public static int sizeClasses() {
+        return ALLOWED.length;
+    }
+
+    public static int sizeClass(final int size) {
         for(int i = 0; i < ALLOWED.length; ++i) {
             if(size <= ALLOWED[i]) {
-                return ALLOWED[i];
+                return i;
             }
         }
 
         throw new IllegalStateException("You should never get here!");
     }
 
-    public static ByteBuffer putWithSize(final ByteBuffer buffer, final Consumer<ByteBuffer> consumer) {
-        final int start = buffer.position();
-        try {
-            buffer.putInt(0);
-            final int startData = buffer.position();
-            consumer.accept(buffer);
-            final int endData = buffer.position();
-            buffer.putInt(start, endData - startData);
-            return buffer;
-        }
-        catch(BufferOverflowException ex) {
-            buffer.position(start);
-            return putWithSize(sizeUp(buffer), consumer);
-        }
-    }
-
-    public static ByteBuffer putNull(final ByteBuffer buffer) {
-        final int start = buffer.position();
-        try {
-            return buffer.putInt(-1);
-        }
-        catch(BufferOverflowException ex) {
-            buffer.position(start);
-            return putNull(buffer);
-        }
+    public static int classSize(final int sizeClass) {
+        return ALLOWED[sizeClass];
     }
 }
@@ -0,0 +1,89 @@
+package db.postgresql.async.buffers;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Buffers shared by all channels of a session, one free list per BufferOps size class.
+//Channels hold on to a buffer of the configured size and only borrow a bigger one
+//while a large message is in flight. At most maxBytes are kept in the free lists,
+//anything given back past that is left to the garbage collector.
+public class BufferPool {
+
+    private final boolean direct;
+    private final long maxBytes;
+    private final ConcurrentLinkedDeque<ByteBuffer>[] free;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong returns = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(final boolean direct, final long maxBytes) {
+        if(maxBytes < 0L) {
+            throw new IllegalArgumentException("maxBytes must be >= 0");
+        }
+
+        this.direct = direct;
+        this.maxBytes = maxBytes;
+        this.free = new ConcurrentLinkedDeque[BufferOps.sizeClasses()];
+        for(int i = 0; i < free.length; ++i) {
+            free[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    public boolean isDirect() { return direct; }
+    public long getMaxBytes() { return maxBytes; }
+    public long getPooledBytes() { return pooledBytes.get(); }
+    public long getBorrows() { return borrows.get(); }
+    public long getAllocations() { return allocations.get(); }
+    public long getReturns() { return returns.get(); }
+    public long getDiscards() { return discards.get(); }
+
+    //cleared buffer with a capacity of at least size
+    public ByteBuffer borrow(final int size) {
+        borrows.incrementAndGet();
+        final ByteBuffer pooled = free[BufferOps.sizeClass(size)].pollFirst();
+        if(pooled != null) {
+            pooledBytes.addAndGet(-pooled.capacity());
+            pooled.clear();
+            return pooled;
+        }
+
+        allocations.incrementAndGet();
+        return BufferOps.allocate(size, direct);
+    }
+
+    public void giveBack(final ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        final int sizeClass = BufferOps.sizeClass(capacity);
+        if(buffer.isDirect() != direct || BufferOps.classSize(sizeClass) != capacity || !reserve(capacity)) {
+            discards.incrementAndGet();
+            return;
+        }
+
+        buffer.clear();
+        free[sizeClass].offerFirst(buffer);
+        returns.incrementAndGet();
+    }
+
+    private boolean reserve(final int capacity) {
+        while(true) {
+            final long current = pooledBytes.get();
+            if(current + capacity > maxBytes) {
+                return false;
+            }
+
+            if(pooledBytes.compareAndSet(current, current + capacity)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool(pooledBytes: %d, borrows: %d, allocations: %d, returns: %d, discards: %d)",
+                             getPooledBytes(), getBorrows(), getAllocations(), getReturns(), getDiscards());
+    }
+}
@@ -17,6 +17,17 @@ public class CopyData extends Response {
         this.buffer = buffer;
     }
 
+    //the payload as a slice of the read buffer, which is moved past it
+    public ByteBuffer payload() {
+        final int limit = buffer.limit();
+        buffer.limit(buffer.position() + getSize());
+        final ByteBuffer ret = buffer.slice();
+        buffer.limit(limit);
+        buffer.position(buffer.position() + getSize());
+        copied = getSize();
+        return ret;
+    }
+
     public void toChannel(final WritableByteChannel channel) {
         final int currentLimit = buffer.limit();
         try {
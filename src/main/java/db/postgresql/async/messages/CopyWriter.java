@@ -0,0 +1,114 @@
+package db.postgresql.async.messages;
+
+import db.postgresql.async.pginfo.PgType;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+//Encodes rows of Java objects in the binary COPY format straight into the write
+//buffer, every value goes through the PgType mapped to its class so nothing is ever
+//formatted as text. Each call to write() adds one CopyData message holding as many
+//whole rows as fit. The file header goes in front of the first row and the trailer
+//after the last one, the values have to match the column types exactly since the
+//server doesn't convert binary input.
+public class CopyWriter {
+
+    private static final byte[] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 };
+
+    private final Iterator<? extends List<?>> rows;
+    private List<?> pending;
+    private boolean header = false;
+    private boolean finished = false;
+    private long count = 0L;
+
+    public CopyWriter(final Iterator<? extends List<?>> rows) {
+        this.rows = rows;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    //rows written to the buffer so far
+    public long getRows() {
+        return count;
+    }
+
+    public void write(final FrontEndMessage fe) {
+        final ByteBuffer buffer = fe.buffer;
+        final int messageStart = buffer.position();
+        if(buffer.remaining() < 6) {
+            return;
+        }
+
+        FrontEnd.CopyData.header.write(buffer, 0);
+        final int dataStart = buffer.position();
+        int mark = dataStart;
+        try {
+            if(!header) {
+                buffer.put(SIGNATURE).putInt(0).putInt(0);
+                header = true;
+                mark = buffer.position();
+            }
+
+            while(pending != null || rows.hasNext()) {
+                if(pending == null) {
+                    pending = rows.next();
+                }
+
+                writeRow(buffer, pending);
+                pending = null;
+                ++count;
+                mark = buffer.position();
+            }
+
+            buffer.putShort((short) -1);
+            finished = true;
+            mark = buffer.position();
+        }
+        catch(BufferOverflowException ex) {
+            end(buffer, messageStart, dataStart, mark);
+            if(buffer.position() == 0) {
+                throw new IllegalArgumentException("Row does not fit in the write buffer");
+            }
+
+            return;
+        }
+        catch(RuntimeException ex) {
+            //whole rows already in the buffer still go out ahead of the CopyFail
+            end(buffer, messageStart, dataStart, mark);
+            throw ex;
+        }
+
+        end(buffer, messageStart, dataStart, mark);
+    }
+
+    private static void end(final ByteBuffer buffer, final int messageStart, final int dataStart, final int mark) {
+        if(mark == dataStart) {
+            buffer.position(messageStart);
+        }
+        else {
+            buffer.position(mark);
+            buffer.putInt(messageStart + 1, mark - messageStart - 1);
+        }
+    }
+
+    private static void writeRow(final ByteBuffer buffer, final List<?> row) {
+        buffer.putShort((short) row.size());
+        for(Object val : row) {
+            if(val == null) {
+                buffer.putInt(-1);
+                continue;
+            }
+
+            final PgType pgType = SerializationContext.registry().pgType(val.getClass());
+            if(pgType == null) {
+                throw new IllegalArgumentException("No mapping for " + val.getClass().getName());
+            }
+
+            pgType.write(buffer, val);
+        }
+    }
+}
@@ -18,6 +18,9 @@ public class DataRow extends Response implements Row {
     private final Registry registry;
     private final ByteBuffer buffer;
     private final int base;
+    private final boolean detached;
+    private int[] offsets;
+    private PgType.Decoder[] decoders;
     
     private DataRow(final BackEnd backEnd, final int size, final ByteBuffer buffer,
                     final RowDescription description, final Registry registry) {
@@ -27,6 +30,7 @@ public class DataRow extends Response implements Row {
         this.description = description;
         this.registry = registry;
         this.base = 0;
+        this.detached = true;
     }
     
     public DataRow(final ByteBuffer buffer) {
@@ -36,6 +40,13 @@ public class DataRow extends Response implements Row {
         buffer.position(buffer.position() + 2); //skip column count
         this.description = SerializationContext.description();
         this.registry = SerializationContext.registry();
+        this.detached = false;
+    }
+
+    //Row over a tuple that is laid out like a DataRow body (column count, then length
+    //prefixed values) but didn't arrive as one, the buffer is used as is, not copied
+    public static DataRow view(final ByteBuffer tuple, final RowDescription description, final Registry registry) {
+        return new DataRow(BackEnd.DataRow, tuple.remaining(), tuple, description, registry);
     }
 
     public void finish() {
@@ -52,7 +63,7 @@ public class DataRow extends Response implements Row {
         buffer.position(position);
         buffer.limit(limit);
         copied.flip();
-        return new DataRow(BackEnd.DataRow, getSize(), buffer, description, registry);
+        return new DataRow(BackEnd.DataRow, getSize(), copied, description, registry);
     }
 
     public void skip() {
@@ -90,15 +101,11 @@ public class DataRow extends Response implements Row {
     }
 
     private Object extractByPgType(final int index) {
-        final FieldDescriptor field = description.field(index);
-        final int oid = field.getTypeOid();
-        final PgType pgType = registry.pgType(oid);
-        if(pgType != null) {
-            return pgType.read(buffer, oid);
-        }
-        else {
-            throw new UnsupportedOperationException("Can't deserialize type with oid " + oid);
+        if(decoders == null) {
+            decoders = description.decoders(registry);
         }
+
+        return decoders[index].decode(buffer);
     }
 
     private class CommonIterator {
@@ -221,17 +228,39 @@ public class DataRow extends Response implements Row {
         }
     }
 
+    //Position of each column's length word, built on the first random access by
+    //walking the length words once. Attached rows borrow the thread's scratch array
+    //since they are only valid until the next row is read anyway.
+    private int[] offsets() {
+        if(offsets == null) {
+            final int length = description.length();
+            final int[] tmp = detached ? new int[length] : SerializationContext.offsets(length);
+            int pos = base + 2;
+            for(int i = 0; i < length; ++i) {
+                tmp[i] = pos;
+                pos += 4 + Math.max(buffer.getInt(pos), 0);
+            }
+
+            offsets = tmp;
+        }
+
+        return offsets;
+    }
+
     private abstract class CommonExtractor {
+        private int saved;
+        
         protected void place(final int index) {
-            if(index >= description.length()) {
-                throw new ArrayIndexOutOfBoundsException();
+            if(index < 0 || index >= description.length()) {
+                throw new ArrayIndexOutOfBoundsException(index);
             }
 
-            buffer.mark();
-            for(int i = 0; i < index; ++i) {
-                final int size = buffer.getInt();
-                buffer.position(buffer.position() + Math.max(size, 0));
-            }
+            saved = buffer.position();
+            buffer.position(offsets()[index]);
+        }
+
+        protected void restore() {
+            buffer.position(saved);
         }
 
         public int length() {
@@ -254,7 +283,7 @@ public class DataRow extends Response implements Row {
                 }
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
     }
@@ -271,7 +300,7 @@ public class DataRow extends Response implements Row {
                 return extractByPgType(index);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
         
@@ -285,7 +314,7 @@ public class DataRow extends Response implements Row {
                 return readBoolean(buffer);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
         
@@ -299,7 +328,7 @@ public class DataRow extends Response implements Row {
                 return readDouble(buffer);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
         
@@ -313,7 +342,7 @@ public class DataRow extends Response implements Row {
                 return readFloat(buffer);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
         
@@ -327,7 +356,7 @@ public class DataRow extends Response implements Row {
                 return readInt(buffer);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
         
@@ -341,7 +370,7 @@ public class DataRow extends Response implements Row {
                 return readLong(buffer);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
         
@@ -355,7 +384,7 @@ public class DataRow extends Response implements Row {
                 return readShort(buffer);
             }
             finally {
-                buffer.reset();
+                restore();
             }
         }
 
@@ -364,11 +393,16 @@ public class DataRow extends Response implements Row {
         }
 
         public Object arrayAt(final int index, final Class elementType) {
-            place(index);
-            final FieldDescriptor field = description.field(index);
-            final int oid = field.getTypeOid();
-            final PgType pgType = registry.pgType(oid);
-            return pgType.read(buffer, field.getTypeOid(), elementType);
+            try {
+                place(index);
+                final FieldDescriptor field = description.field(index);
+                final int oid = field.getTypeOid();
+                final PgType pgType = registry.pgType(oid);
+                return pgType.read(buffer, field.getTypeOid(), elementType);
+            }
+            finally {
+                restore();
+            }
         }
     }
 
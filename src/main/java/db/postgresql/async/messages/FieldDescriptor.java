@@ -40,6 +40,11 @@ public class FieldDescriptor {
         this.format = format;
     }
 
+    //for rows that don't come with a RowDescription, e.g. binary COPY
+    public static FieldDescriptor binary(final String name, final int typeOid) {
+        return new FieldDescriptor(name, 0, (short) 0, typeOid, (short) 0, 0, Format.BINARY);
+    }
+
     public FieldDescriptor(final ByteBuffer buffer) {
         this(ascii(buffer), buffer.getInt(), buffer.getShort(),
              buffer.getInt(), buffer.getShort(), buffer.getInt(),
@@ -94,6 +94,16 @@ public class FrontEndMessage {
         return success;
     }
     
+    public boolean bindExecute(final Portal portal, final List<Object> args, final Format outputFormat) {
+        final int startAt = buffer.position();
+        final boolean success = bind(portal, args, outputFormat) && execute(portal);
+        if(!success) {
+            buffer.position(startAt);
+        }
+
+        return success;
+    }
+
     public boolean bind(final Portal portal, final List<Object> args, final Format outputFormat) {
         return guard(FrontEnd.Bind, () -> {
                 putNullString(portal.getId());
@@ -166,6 +176,23 @@ public class FrontEndMessage {
         }
     }
 
+    //One CopyData message holding as much of source as fits, returns the number of bytes taken
+    public int copyData(final ByteBuffer source) {
+        if(buffer.remaining() <= 5 || !source.hasRemaining()) {
+            return 0;
+        }
+
+        final int start = buffer.position();
+        FrontEnd.CopyData.header.write(buffer, 0);
+        final int count = Math.min(buffer.remaining(), source.remaining());
+        final int limit = source.limit();
+        source.limit(source.position() + count);
+        buffer.put(source);
+        source.limit(limit);
+        buffer.putInt(start + 1, count + 4);
+        return count;
+    }
+
     public boolean copyDone() {
         return guard(FrontEnd.CopyDone, TRUE);
     }
@@ -209,7 +236,7 @@ public class FrontEndMessage {
     }
 
     public boolean password(final byte[] bytes) {
-        return guard(FrontEnd.Password, () -> { buffer.put(bytes); return true; });
+        return guard(FrontEnd.Password, () -> { buffer.put(bytes); putNull(); return true; });
     }
 
     public static String toHex(final byte[] bytes) {
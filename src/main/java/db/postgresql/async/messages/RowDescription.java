@@ -1,11 +1,12 @@
 package db.postgresql.async.messages;
 
+import db.postgresql.async.pginfo.PgType;
+import db.postgresql.async.pginfo.Registry;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Arrays;
 
-//TODO: Augment this to populate PgType serializers on creation
 public class RowDescription extends Response {
     
     public static final RowDescription EMPTY = new RowDescription(BackEnd.RowDescription, 0, new FieldDescriptor[0]);
@@ -36,23 +37,119 @@ public class RowDescription extends Response {
 
     public int length() { return fields.length; }
 
+    //Open addressed name -> index table, built once per description and shared
+    //with its binary copy. If a name repeats the first column with it wins.
+    private static class NameIndex {
+        private final String[] names;
+        private final int[] indexes;
+        private final int mask;
+
+        private static int slot(final String name, final int mask) {
+            final int h = name.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        public NameIndex(final FieldDescriptor[] fields) {
+            int size = 2;
+            while(size < fields.length * 2) {
+                size <<= 1;
+            }
+
+            this.names = new String[size];
+            this.indexes = new int[size];
+            this.mask = size - 1;
+
+            for(int i = 0; i < fields.length; ++i) {
+                final String name = fields[i].getName();
+                int pos = slot(name, mask);
+                while(names[pos] != null && !names[pos].equals(name)) {
+                    pos = (pos + 1) & mask;
+                }
+
+                if(names[pos] == null) {
+                    names[pos] = name;
+                    indexes[pos] = i;
+                }
+            }
+        }
+
+        public int indexOf(final String name) {
+            int pos = slot(name, mask);
+            String current;
+            while((current = names[pos]) != null) {
+                if(current == name || current.equals(name)) {
+                    return indexes[pos];
+                }
+
+                pos = (pos + 1) & mask;
+            }
+
+            return -1;
+        }
+    }
+
+    private final NameIndex nameIndex;
+
     public int indexOf(final String name) {
-        for(int i = 0; i < fields.length; ++i) {
-            if(fields[i].getName().equals(name)) {
-                return i;
+        final int index = nameIndex.indexOf(name);
+        if(index == -1) {
+            throw new IllegalArgumentException(name + " is not a valid field name");
+        }
+
+        return index;
+    }
+
+    //One decoder per column, resolved against the registry the first time a row is
+    //read. Cached statements keep their description, so every later execution reads
+    //its cells without looking types up. Rebuilt when the registry changes.
+    private static class Decoders {
+        final Registry registry;
+        final int version;
+        final PgType.Decoder[] decoders;
+
+        public Decoders(final Registry registry, final FieldDescriptor[] fields) {
+            this.registry = registry;
+            this.version = registry.version();
+            this.decoders = new PgType.Decoder[fields.length];
+            for(int i = 0; i < fields.length; ++i) {
+                final int oid = fields[i].getTypeOid();
+                final PgType pgType = registry.pgType(oid);
+                decoders[i] = (pgType != null) ? pgType.decoder(oid) : (buffer) -> {
+                    throw new UnsupportedOperationException("Can't deserialize type with oid " + oid);
+                };
             }
         }
+    }
 
-        throw new IllegalArgumentException(name + " is not a valid field name");
+    private volatile Decoders decoders;
+
+    public PgType.Decoder[] decoders(final Registry registry) {
+        Decoders current = decoders;
+        if(current == null || current.registry != registry || current.version != registry.version()) {
+            current = new Decoders(registry, fields);
+            decoders = current;
+        }
+
+        return current.decoders;
     }
 
     public Iterator<FieldDescriptor> iterator() {
         return Arrays.asList(fields).iterator();
     }
 
+    public static RowDescription of(final FieldDescriptor... fields) {
+        return new RowDescription(BackEnd.RowDescription, 0, fields);
+    }
+
     private RowDescription(final BackEnd backEnd, final int size, final FieldDescriptor[] fields) {
+        this(backEnd, size, fields, new NameIndex(fields));
+    }
+
+    private RowDescription(final BackEnd backEnd, final int size, final FieldDescriptor[] fields,
+                           final NameIndex nameIndex) {
         super(backEnd, size);
         this.fields = fields;
+        this.nameIndex = nameIndex;
     }
     
     public RowDescription(final ByteBuffer buffer) {
@@ -61,10 +158,13 @@ public class RowDescription extends Response {
         for(int i = 0; i < fields.length; ++i) {
             fields[i] = new FieldDescriptor(buffer);
         }
+
+        nameIndex = new NameIndex(fields);
     }
 
     public RowDescription toBinary() {
         return new RowDescription(getBackEnd(), getSize(),
-                                  Arrays.stream(fields).map((f) -> f.toBinary()).toArray(FieldDescriptor[]::new));
+                                  Arrays.stream(fields).map((f) -> f.toBinary()).toArray(FieldDescriptor[]::new),
+                                  nameIndex);
     }
 }
@@ -1,7 +1,13 @@
 package db.postgresql.async.pginfo;
 
 import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import static db.postgresql.async.serializers.SerializationContext.registry;
 import static db.postgresql.async.serializers.Primitives.*;
 
@@ -66,6 +72,7 @@ public class ArrayInfo {
     private final int[] dimensions;
     private final int numberElements;
     private final Class elementType;
+    private final boolean hasNulls;
     
     public PgType getPgType() { return pgType; }
     public Object getAry() { return ary; }
@@ -105,19 +112,27 @@ public class ArrayInfo {
         this.dimensions = dimensions();
         this.numberElements = numberElements();
         this.elementType = pgType.getType();
+        this.hasNulls = true;
     }
 
     public ArrayInfo(final PgType pgType, final ByteBuffer buffer, final Class elementType) {
         this.pgType = pgType;
         this.elementType = elementType;
         this.dimensions = new int[buffer.getInt()];
-        buffer.getInt(); //ignore offset information;
+        this.hasNulls = buffer.getInt() != 0;
         final int oid = buffer.getInt(); //ignore oid information
         for(int i = 0; i < dimensions.length; ++i) {
             dimensions[i] = buffer.getInt();
             buffer.getInt(); //ignore lower bound information
         }
 
+        //empty arrays come back with no dimensions at all
+        if(dimensions.length == 0) {
+            this.numberElements = 0;
+            this.ary = Array.newInstance(this.elementType, 0);
+            return;
+        }
+
         this.numberElements = numberElements();
         this.ary = Array.newInstance(this.elementType, dimensions);
         read(buffer);
@@ -142,23 +157,8 @@ public class ArrayInfo {
             buffer.putInt(0); //lower bound is always zero
         }
               
-        if(elementType == boolean.class) {
-            write((ary, i) -> writeBoolean(buffer, Array.getBoolean(ary, i)));
-        }
-        else if(elementType == short.class) {
-            write((ary, i) -> writeShort(buffer, Array.getShort(ary, i)));
-        }
-        else if(elementType == int.class) {
-            write((ary, i) -> writeInt(buffer, Array.getInt(ary, i)));
-        }
-        else if(elementType == long.class) {
-            write((ary, i) -> writeLong(buffer, Array.getLong(ary, i)));
-        }
-        else if(elementType == float.class) {
-            write((ary, i) -> writeFloat(buffer, Array.getFloat(ary, i)));
-        }
-        else if(elementType == double.class) {
-            write((ary, i) -> writeDouble(buffer, Array.getDouble(ary, i)));
+        if(elementType.isPrimitive() && dimensions.length > 0) {
+            writeRows(buffer);
         }
         else {
             write((ary, i) -> pgType.write(buffer, Array.get(ary, i)));
@@ -175,23 +175,8 @@ public class ArrayInfo {
     }
 
     private void read(final ByteBuffer buffer) {
-        if(elementType == boolean.class) {
-            read((ary, i) -> Array.setBoolean(ary, i, readBoolean(buffer)));
-        }
-        else if(elementType == short.class) {
-            read((ary, i) -> Array.setShort(ary, i, readShort(buffer)));
-        }
-        else if(elementType == int.class) {
-            read((ary, i) -> Array.setInt(ary, i, readInt(buffer)));
-        }
-        else if(elementType == long.class) {
-            read((ary, i) -> Array.setLong(ary, i, readLong(buffer)));
-        }
-        else if(elementType == float.class) {
-            read((ary, i) -> Array.setFloat(ary, i, readFloat(buffer)));
-        }
-        else if(elementType == double.class) {
-            read((ary, i) -> Array.setDouble(ary, i, readDouble(buffer)));
+        if(elementType.isPrimitive()) {
+            readRows(buffer);
         }
         else {
             read((ary, i) -> Array.set(ary, i, pgType.read(buffer, pgType.getOid())));
@@ -206,4 +191,267 @@ public class ArrayInfo {
             increment(indexes);
         }
     }
+
+    //Primitive arrays are filled one innermost array at a time straight from the
+    //buffer, no boxing and no reflection per element. Every element still carries
+    //its own length word, when the has-null flag is clear those are just skipped.
+    private void readRows(final ByteBuffer buffer) {
+        final int length = dimensions[dimensions.length - 1];
+        final int[] indexes = initialIndexes();
+        for(int i = 0; i < numberElements; i += length) {
+            final Object row = lastAry(indexes);
+            if(elementType == int.class) {
+                readInts(buffer, (int[]) row);
+            }
+            else if(elementType == long.class) {
+                readLongs(buffer, (long[]) row);
+            }
+            else if(elementType == double.class) {
+                readDoubles(buffer, (double[]) row);
+            }
+            else if(elementType == float.class) {
+                readFloats(buffer, (float[]) row);
+            }
+            else if(elementType == short.class) {
+                readShorts(buffer, (short[]) row);
+            }
+            else if(elementType == boolean.class) {
+                readBooleans(buffer, (boolean[]) row);
+            }
+            else {
+                throw new UnsupportedOperationException(elementType + " arrays are not supported");
+            }
+
+            indexes[indexes.length - 1] = length - 1;
+            increment(indexes);
+        }
+    }
+
+    private void readInts(final ByteBuffer buffer, final int[] row) {
+        if(hasNulls) {
+            for(int i = 0; i < row.length; ++i) {
+                row[i] = readInt(buffer);
+            }
+
+            return;
+        }
+
+        int position = buffer.position();
+        for(int i = 0; i < row.length; ++i, position += 8) {
+            row[i] = buffer.getInt(position + 4);
+        }
+
+        buffer.position(position);
+    }
+
+    private void readLongs(final ByteBuffer buffer, final long[] row) {
+        if(hasNulls) {
+            for(int i = 0; i < row.length; ++i) {
+                row[i] = readLong(buffer);
+            }
+
+            return;
+        }
+
+        int position = buffer.position();
+        for(int i = 0; i < row.length; ++i, position += 12) {
+            row[i] = buffer.getLong(position + 4);
+        }
+
+        buffer.position(position);
+    }
+
+    private void readDoubles(final ByteBuffer buffer, final double[] row) {
+        if(hasNulls) {
+            for(int i = 0; i < row.length; ++i) {
+                row[i] = readDouble(buffer);
+            }
+
+            return;
+        }
+
+        int position = buffer.position();
+        for(int i = 0; i < row.length; ++i, position += 12) {
+            row[i] = buffer.getDouble(position + 4);
+        }
+
+        buffer.position(position);
+    }
+
+    private void readFloats(final ByteBuffer buffer, final float[] row) {
+        if(hasNulls) {
+            for(int i = 0; i < row.length; ++i) {
+                row[i] = readFloat(buffer);
+            }
+
+            return;
+        }
+
+        int position = buffer.position();
+        for(int i = 0; i < row.length; ++i, position += 8) {
+            row[i] = buffer.getFloat(position + 4);
+        }
+
+        buffer.position(position);
+    }
+
+    private void readShorts(final ByteBuffer buffer, final short[] row) {
+        if(hasNulls) {
+            for(int i = 0; i < row.length; ++i) {
+                row[i] = readShort(buffer);
+            }
+
+            return;
+        }
+
+        int position = buffer.position();
+        for(int i = 0; i < row.length; ++i, position += 6) {
+            row[i] = buffer.getShort(position + 4);
+        }
+
+        buffer.position(position);
+    }
+
+    private void readBooleans(final ByteBuffer buffer, final boolean[] row) {
+        if(hasNulls) {
+            for(int i = 0; i < row.length; ++i) {
+                row[i] = readBoolean(buffer);
+            }
+
+            return;
+        }
+
+        int position = buffer.position();
+        for(int i = 0; i < row.length; ++i, position += 5) {
+            row[i] = buffer.get(position + 4) == 1;
+        }
+
+        buffer.position(position);
+    }
+
+    private static int elementSize(final Class type) {
+        if(type == int.class || type == float.class) {
+            return 4;
+        }
+        else if(type == long.class || type == double.class) {
+            return 8;
+        }
+        else if(type == short.class) {
+            return 2;
+        }
+        else if(type == boolean.class) {
+            return 1;
+        }
+        else {
+            throw new UnsupportedOperationException(type + " arrays are not supported");
+        }
+    }
+
+    //The whole array is checked against the room left up front, after that every
+    //element is a length word and a value put straight from the primitive array
+    private void writeRows(final ByteBuffer buffer) {
+        if(buffer.remaining() < (long) numberElements * (4 + elementSize(elementType))) {
+            throw new BufferOverflowException();
+        }
+
+        final int length = dimensions[dimensions.length - 1];
+        final int[] indexes = initialIndexes();
+        for(int i = 0; i < numberElements; i += length) {
+            final Object row = lastAry(indexes);
+            if(elementType == int.class) {
+                for(int val : (int[]) row) {
+                    buffer.putInt(4).putInt(val);
+                }
+            }
+            else if(elementType == long.class) {
+                for(long val : (long[]) row) {
+                    buffer.putInt(8).putLong(val);
+                }
+            }
+            else if(elementType == double.class) {
+                for(double val : (double[]) row) {
+                    buffer.putInt(8).putDouble(val);
+                }
+            }
+            else if(elementType == float.class) {
+                for(float val : (float[]) row) {
+                    buffer.putInt(4).putFloat(val);
+                }
+            }
+            else if(elementType == short.class) {
+                for(short val : (short[]) row) {
+                    buffer.putInt(2).putShort(val);
+                }
+            }
+            else {
+                for(boolean val : (boolean[]) row) {
+                    buffer.putInt(1).put((byte) (val ? 1 : 0));
+                }
+            }
+
+            indexes[indexes.length - 1] = length - 1;
+            increment(indexes);
+        }
+    }
+
+    public static Class elementType(final Buffer values) {
+        if(values instanceof IntBuffer) {
+            return int.class;
+        }
+        else if(values instanceof LongBuffer) {
+            return long.class;
+        }
+        else if(values instanceof DoubleBuffer) {
+            return double.class;
+        }
+        else if(values instanceof FloatBuffer) {
+            return float.class;
+        }
+        else {
+            throw new UnsupportedOperationException(values.getClass() + " can't be sent as an array");
+        }
+    }
+
+    //The remaining values of an nio buffer go out as a one dimensional array, the
+    //buffer's position is left alone so it can be bound again
+    public static void toBuffer(final PgType pgType, final ByteBuffer buffer, final Buffer values) {
+        final Class type = elementType(values);
+        final int size = values.remaining();
+        if(buffer.remaining() < 20 + (long) size * (4 + elementSize(type))) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.putInt(1);
+        buffer.putInt(0);
+        buffer.putInt(pgType.getOid());
+        buffer.putInt(size);
+        buffer.putInt(0);
+
+        final int start = values.position();
+        final int end = values.limit();
+        if(type == int.class) {
+            final IntBuffer ints = (IntBuffer) values;
+            for(int i = start; i < end; ++i) {
+                buffer.putInt(4).putInt(ints.get(i));
+            }
+        }
+        else if(type == long.class) {
+            final LongBuffer longs = (LongBuffer) values;
+            for(int i = start; i < end; ++i) {
+                buffer.putInt(8).putLong(longs.get(i));
+            }
+        }
+        else if(type == double.class) {
+            final DoubleBuffer doubles = (DoubleBuffer) values;
+            for(int i = start; i < end; ++i) {
+                buffer.putInt(8).putDouble(doubles.get(i));
+            }
+        }
+        else {
+            final FloatBuffer floats = (FloatBuffer) values;
+            for(int i = start; i < end; ++i) {
+                buffer.putInt(4).putFloat(floats.get(i));
+            }
+        }
+    }
 }
@@ -0,0 +1,110 @@
+package db.postgresql.async.pginfo;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Oid to PgType lookups without boxing. Oids below FirstNormalObjectId belong to types
+//created by initdb and are indexed directly, everything else goes into an open
+//addressing table. Types are added rarely and looked up for every value read, so
+//the table is copied on write and readers never lock. Oid 0 is never a type and
+//marks an empty slot.
+class OidTable {
+
+    static final int DENSE = 16_384;
+
+    private static class Sparse {
+        final int[] keys;
+        final PgType[] values;
+        int size;
+
+        public Sparse(final int capacity) {
+            this.keys = new int[capacity];
+            this.values = new PgType[capacity];
+        }
+
+        private int slot(final int oid) {
+            final int mask = keys.length - 1;
+            int h = oid * 0x9E3779B9;
+            int index = (h ^ (h >>> 16)) & mask;
+            while(keys[index] != 0 && keys[index] != oid) {
+                index = (index + 1) & mask;
+            }
+
+            return index;
+        }
+
+        public PgType get(final int oid) {
+            return values[slot(oid)];
+        }
+
+        public void put(final int oid, final PgType val) {
+            final int index = slot(oid);
+            if(keys[index] == 0) {
+                keys[index] = oid;
+                ++size;
+            }
+
+            values[index] = val;
+        }
+
+        //room for extra more entries at no more than half full
+        public Sparse copy(final int extra, final int without) {
+            int capacity = 16;
+            while(capacity < (size + extra) * 2) {
+                capacity <<= 1;
+            }
+
+            final Sparse ret = new Sparse(capacity);
+            for(int i = 0; i < keys.length; ++i) {
+                if(keys[i] != 0 && keys[i] != without) {
+                    ret.put(keys[i], values[i]);
+                }
+            }
+
+            return ret;
+        }
+    }
+
+    private final AtomicReferenceArray<PgType> dense = new AtomicReferenceArray<>(DENSE);
+    private volatile Sparse sparse = new Sparse(16);
+
+    //oids are unsigned, anything past Integer.MAX_VALUE is negative here
+    private static boolean isDense(final int oid) {
+        return oid > 0 && oid < DENSE;
+    }
+
+    public PgType get(final int oid) {
+        if(isDense(oid)) {
+            return dense.get(oid);
+        }
+        else if(oid == 0) {
+            return null;
+        }
+        else {
+            return sparse.get(oid);
+        }
+    }
+
+    public synchronized void put(final int oid, final PgType val) {
+        if(isDense(oid)) {
+            dense.set(oid, val);
+        }
+        else if(oid != 0) {
+            final Sparse next = sparse.copy(1, 0);
+            next.put(oid, val);
+            sparse = next;
+        }
+    }
+
+    public synchronized void remove(final int oid, final PgType val) {
+        if(!val.equals(get(oid))) {
+            return;
+        }
+
+        if(isDense(oid)) {
+            dense.set(oid, null);
+        }
+        else {
+            sparse = sparse.copy(0, oid);
+        }
+    }
+}
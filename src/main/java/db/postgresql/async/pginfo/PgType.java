@@ -7,6 +7,7 @@ import java.util.TreeSet;
 import java.util.SortedSet;
 import static db.postgresql.async.buffers.BufferOps.*;
 import db.postgresql.async.Mapping;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
 public class PgType {
@@ -47,21 +48,54 @@ public class PgType {
         }
     }
 
+    @FunctionalInterface
+    public interface Decoder {
+        Object decode(ByteBuffer buffer);
+    }
+
+    //Same as read, except whether oid is this type or its array is decided once,
+    //for callers that read the same column row after row
+    public Decoder decoder(final int oid) {
+        if(this.oid == oid) {
+            final Mapping.Reader reader = mapping.reader;
+            return (buffer) -> {
+                final int size = buffer.getInt();
+                return (size == -1) ? null : reader.read(size, buffer, oid);
+            };
+        }
+        else if(this.arrayId == oid) {
+            return (buffer) -> {
+                final int size = buffer.getInt();
+                return (size == -1) ? null : arrayRead(size, buffer);
+            };
+        }
+        else {
+            throw new UnsupportedOperationException("Can't handle oid: " + oid);
+        }
+    }
+
+    //Overflowing the buffer throws, callers write into fixed size message buffers and
+    //either roll the message back or carry it over to the next write
     public void write(final ByteBuffer buffer, final Object o) {
         if(o == null) {
-            putNull(buffer);
+            buffer.putInt(-1);
             return;
         }
 
-        putWithSize(buffer, (b) -> {
-                final Class objectType = o.getClass();
-                if(objectType.isArray() && objectType != byte[].class) {
-                    arrayWrite(b, o);
-                }
-                else {
-                    mapping.writer.write(b, o);
-                }
-            });
+        final int start = buffer.position();
+        buffer.putInt(0);
+        final Class objectType = o.getClass();
+        if(objectType.isArray() && objectType != byte[].class) {
+            arrayWrite(buffer, o);
+        }
+        else if(o instanceof Buffer) {
+            ArrayInfo.toBuffer(this, buffer, (Buffer) o);
+        }
+        else {
+            mapping.writer.write(buffer, o);
+        }
+
+        buffer.putInt(start, buffer.position() - start - 4);
     }
 
     final private Mapping mapping;
@@ -119,6 +153,7 @@ public class PgType {
     public int getOid() { return oid; }
     public String getName() { return mapping.name; }
     public Class getType() { return mapping.type; }
+    public Mapping getMapping() { return mapping; }
     public int getArrayId() { return arrayId; }
     public int getRelId() { return relId; }
     public boolean isComplex() { return relId != 0; }
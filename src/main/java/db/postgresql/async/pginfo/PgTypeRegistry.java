@@ -1,19 +1,37 @@
 package db.postgresql.async.pginfo;
 
 import static java.util.Collections.emptyList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.List;
+import java.util.Set;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import db.postgresql.async.Mapping;
 import db.postgresql.async.Session;
+import db.postgresql.async.SessionInfo;
 import db.postgresql.async.Row;
+import db.postgresql.async.Task;
 import db.postgresql.async.Transaction;
 import db.postgresql.async.types.Record;
 import db.postgresql.async.CompletableTask;
@@ -24,18 +42,56 @@ public class PgTypeRegistry implements Registry {
 
     private static final AtomicInteger counter = new AtomicInteger(1);
     
+    //names and java classes, oids live in their own table
     private final ConcurrentMap<Object,PgType> pgTypeMap = new ConcurrentHashMap<>(1_000, 0.75f, 1);
+    private final OidTable byOid = new OidTable();
+
+    //Class lookups happen for every parameter written so each class remembers its
+    //answer, which stays good until the registry changes
+    private static class Cached {
+        final int version;
+        final PgType pgType;
+
+        public Cached(final int version, final PgType pgType) {
+            this.version = version;
+            this.pgType = pgType;
+        }
+    }
+
+    private static class ClassSlot {
+        volatile Cached cached;
+    }
+
+    private final ClassValue<ClassSlot> classes = new ClassValue<ClassSlot>() {
+        @Override
+        protected ClassSlot computeValue(final Class<?> type) {
+            return new ClassSlot();
+        }
+    };
+
+    private final AtomicInteger version = new AtomicInteger();
 
     public PgTypeRegistry add(final PgType val) {
-        pgTypeMap.put(val.getOid(), val);
-        pgTypeMap.put(val.getArrayId(), val);
+        byOid.put(val.getOid(), val);
+        byOid.put(val.getArrayId(), val);
         pgTypeMap.put(val.getName(), val);
         pgTypeMap.put(val.getType(), val);
+        version.incrementAndGet();
         return this;
     }
 
     public PgType pgType(final Integer oid) {
-        return pgTypeMap.get(oid);
+        return (oid == null) ? null : byOid.get(oid);
+    }
+
+    @Override
+    public PgType pgType(final int oid) {
+        return byOid.get(oid);
+    }
+
+    @Override
+    public int version() {
+        return version.get();
     }
 
     public PgType pgType(final String name) {
@@ -43,29 +99,58 @@ public class PgTypeRegistry implements Registry {
     }
 
     public PgType pgType(final Class type) {
-        PgType pgType = pgTypeMap.get(type);
+        final ClassSlot slot = classes.get(type);
+        final int current = version.get();
+        final Cached cached = slot.cached;
+        if(cached != null && cached.version == current) {
+            return cached.pgType;
+        }
+
+        final PgType found = find(type);
+        slot.cached = new Cached(current, found);
+        return found;
+    }
+
+    private PgType find(final Class type) {
+        final PgType pgType = pgTypeMap.get(type);
         if(pgType != null) {
             return pgType;
         }
 
         if(type.isArray()) {
-            return populateArrayType(type);
+            return arrayType(type);
+        }
+
+        if(Buffer.class.isAssignableFrom(type) && !ByteBuffer.class.isAssignableFrom(type)) {
+            return bufferType(type);
         }
 
         return null;
     }
 
-    private PgType populateArrayType(final Class type) {
+    private PgType arrayType(final Class type) {
         final Class elementType = ArrayInfo.elementType(type);
-        if(elementType.isPrimitive()) {
-            final Class wrapper = findWrapper(elementType);
-            pgTypeMap.put(type, pgType(wrapper));
+        final Class key = elementType.isPrimitive() ? findWrapper(elementType) : elementType;
+        return (key == null) ? null : pgTypeMap.get(key);
+    }
+
+    //int, long, float and double nio buffers are sent as arrays of their element type
+    private PgType bufferType(final Class type) {
+        if(IntBuffer.class.isAssignableFrom(type)) {
+            return pgTypeMap.get(Integer.class);
+        }
+        else if(LongBuffer.class.isAssignableFrom(type)) {
+            return pgTypeMap.get(Long.class);
+        }
+        else if(DoubleBuffer.class.isAssignableFrom(type)) {
+            return pgTypeMap.get(Double.class);
+        }
+        else if(FloatBuffer.class.isAssignableFrom(type)) {
+            return pgTypeMap.get(Float.class);
         }
         else {
-            pgTypeMap.put(type, pgTypeMap.get(elementType));
+            return null;
         }
-        
-        return pgTypeMap.get(type);
     }
 
     private static Class findWrapper(final Class c) {
@@ -106,57 +191,439 @@ public class PgTypeRegistry implements Registry {
         return map;
     }
 
-    private Map<Integer,SortedSet<PgAttribute>> extractPgType(final Map<Integer,SortedSet<PgAttribute>> attributes,
-                                                              final Row row, final List<Mapping> mappings) {
+    static class TypeRow {
+        final int oid;
+        final String name;
+        final int arrayId;
+        final int relId;
+        final String kind;
+        final int baseType;
+
+        public TypeRow(final int oid, final String name, final int arrayId, final int relId,
+                       final String kind, final int baseType) {
+            this.oid = oid;
+            this.name = name;
+            this.arrayId = arrayId;
+            this.relId = relId;
+            this.kind = kind;
+            this.baseType = baseType;
+        }
+
+        public PgType toPgType(final Mapping mapping, final SortedSet<PgAttribute> attributes) {
+            return new PgType.Builder()
+                .oid(oid)
+                .mapping(mapping)
+                .arrayId(arrayId)
+                .relId(relId)
+                .attributes(attributes).build();
+        }
+
+        public boolean same(final TypeRow rhs) {
+            return (oid == rhs.oid && arrayId == rhs.arrayId && relId == rhs.relId &&
+                    baseType == rhs.baseType && name.equals(rhs.name) && kind.equals(rhs.kind));
+        }
+    }
+
+    private static List<TypeRow> extractType(final List<TypeRow> list, final Row row) {
         row.with(() -> {
                 Row.Iterator iter = row.iterator();
-                final int oid = iter.nextInt();
-                final String name = iter.nextString() + "." + iter.nextString();
-                final int arrayId = iter.nextInt();
-                final int relId = iter.nextInt();
-                final SortedSet<PgAttribute> myAttributes = attributes.get(relId);
-
-                Mapping mapping = null;
-                final Optional<Mapping> opt = mappings.stream().filter((m) -> m.name.equals(name)).findFirst();
-                if(opt.isPresent()) {
-                    mapping = opt.get();
-                }
-                else if(myAttributes != null) {
-                    mapping = new Mapping(Record.class, name, Record::write, Record::read);
-                }
+                list.add(new TypeRow(iter.nextInt(), iter.nextString() + "." + iter.nextString(),
+                                     iter.nextInt(), iter.nextInt(), iter.nextString(), iter.nextInt())); });
+        return list;
+    }
+
+    private static final String TYPES = "select typ.oid::int4, ns.nspname::text, typ.typname::text, " +
+        "typ.typarray::int4, typ.typrelid::int4, typ.typtype::text, typ.typbasetype::int4 " +
+        "from pg_type typ " +
+        "join pg_namespace ns on typ.typnamespace = ns.oid ";
 
-                if(mapping != null) {
-                    add(new PgType.Builder()
-                        .oid(oid)
-                        .mapping(mapping)
-                        .arrayId(arrayId)
-                        .relId(relId)
-                        .attributes(myAttributes).build());
-                } });
-        
-        return attributes;
+    private static final String ATTRIBUTES = "select attrelid::int4, attname::text, atttypid::int4, attnum " +
+        "from pg_attribute where attnum >= 1 and not attisdropped and attrelid in (%s) " +
+        "order by attrelid asc, attnum asc";
+
+    private static String quoted(final Collection<String> vals) {
+        return vals.stream().map((v) -> "'" + v.replace("'", "''") + "'").collect(Collectors.joining(", "));
     }
-    
+
+    private static String list(final Collection<Integer> vals) {
+        return vals.stream().map(String::valueOf).collect(Collectors.joining(", "));
+    }
+
+    private static <T> CompletableFuture<T> run(final Session session, final boolean catalog, final Task<T> task) {
+        return catalog ? session.catalog(task) : session.execute(task);
+    }
+
+    private CompletableFuture<Map<Integer,SortedSet<PgAttribute>>> attributes(final Session session, final boolean catalog,
+                                                                             final List<TypeRow> rows) {
+        final SortedSet<Integer> relIds = new TreeSet<>();
+        for(TypeRow row : rows) {
+            if(row.relId != PgType.DEFAULT_RELID) {
+                relIds.add(row.relId);
+            }
+        }
+
+        if(relIds.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        return run(session, catalog, applyRows(String.format(ATTRIBUTES, list(relIds)), NO_ARGS,
+                                               new HashMap<>(), this::extractAttribute));
+    }
+
+    private static Mapping mapping(final Session session, final String name) {
+        for(Mapping mapping : session.getSessionInfo().getMappings()) {
+            if(mapping.name.equals(name)) {
+                return mapping;
+            }
+        }
+
+        return null;
+    }
+
+    //Only built in and explicitly mapped types are loaded up front, everything else
+    //is looked up the first time its oid shows up in a description
     public void loadTypes(final Session session) {
-        final String sqlAttributes = "select attrelid, attname, atttypid, attnum " +
-            "from pg_attribute where attnum >= 1 " +
-            "order by attrelid asc, atttypid asc";
+        final List<String> names = new ArrayList<>();
+        for(Mapping mapping : session.getSessionInfo().getMappings()) {
+            names.add(mapping.name);
+        }
+
+        //mapped types can depend on types that aren't mapped, those are resolved now
+        this.session = session;
+        try {
+            if(!names.isEmpty()) {
+                final String sqlTypes = TYPES + "where ns.nspname || '.' || typ.typname in (" + quoted(names) + ")";
+                final List<TypeRow> rows = session.execute(applyRows(sqlTypes, NO_ARGS, new ArrayList<>(),
+                                                                     PgTypeRegistry::extractType)).get();
+                final Map<Integer,SortedSet<PgAttribute>> attributes = attributes(session, false, rows).get();
+                define(session, rows, attributes).get();
+            }
+        }
+        catch(ExecutionException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final String CHECKSUM = "select current_setting('server_version_num')::int4, " +
+        "((select count(*) from pg_type) + (select coalesce(sum(xmin::text::int8), 0) from pg_type) + " +
+        "31 * (select coalesce(sum(xmin::text::int8), 0) from pg_class))::int8";
+
+    private final ConcurrentMap<Integer,TypeRow> known = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer,SortedSet<PgAttribute>> knownAttributes = new ConcurrentHashMap<>();
+    private volatile String server;
+    private volatile long[] key;
+
+    private static String server(final Session session) {
+        final SessionInfo info = session.getSessionInfo();
+        return info.getHost() + ":" + info.getPort() + "/" + info.getDatabase();
+    }
+
+    private static List<String> names(final Session session) {
+        final List<String> ret = new ArrayList<>();
+        for(Mapping mapping : session.getSessionInfo().getMappings()) {
+            ret.add(mapping.name);
+        }
+
+        return ret;
+    }
+
+    //server version and a checksum that moves whenever a type or relation is created,
+    //altered or dropped
+    private static CompletableFuture<long[]> checksum(final Session session, final boolean catalog) {
+        return run(session, catalog, applyRows(CHECKSUM, NO_ARGS, new long[2], (key, row) -> {
+                    row.with(() -> {
+                            Row.Iterator iter = row.iterator();
+                            key[0] = iter.nextInt();
+                            key[1] = iter.nextLong(); });
+                    return key; }));
+    }
+
+    private static TypeSnapshot read(final File file) {
+        try {
+            return TypeSnapshot.read(file);
+        }
+        catch(IOException e) {
+            //unreadable is the same as missing, it gets written again
+            return null;
+        }
+    }
 
-        final String sqlTypes = "select typ.oid, ns.nspname, typ.typname, typ.typarray, typ.typrelid " +
-            "from pg_type typ " +
-            "join pg_namespace ns on typ.typnamespace = ns.oid";
-        
-        final List<Mapping> mappings = session.getSessionInfo().getMappings();
-        final Map<Integer,SortedSet<PgAttribute>> attributes = new HashMap<>();
+    //Loads the types from a snapshot taken by an earlier process against the same
+    //server with the same mappings, the server is then checked in the background and
+    //whatever changed since is loaded again and the snapshot rewritten. Without a
+    //usable snapshot the types are loaded from the server and the snapshot written.
+    //The future is true when the snapshot turned out to be current.
+    public CompletableFuture<Boolean> loadTypes(final Session session, final File file) {
+        final TypeSnapshot snapshot = read(file);
+        if(snapshot == null || !snapshot.server.equals(server(session)) ||
+           !new HashSet<>(snapshot.names).equals(new HashSet<>(names(session)))) {
+            try {
+                final long[] current = checksum(session, false).get();
+                loadTypes(session);
+                this.server = server(session);
+                this.key = current;
+            }
+            catch(ExecutionException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
 
+            saveTypes(file);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        this.server = snapshot.server;
+        this.key = new long[] { snapshot.version, snapshot.checksum };
+        this.session = session;
         try {
-            session.execute(transaction(attributes)
-                            .then((attr) -> applyRows(sqlAttributes, NO_ARGS, attr, this::extractAttribute))
-                            .then((attr) -> applyRows(sqlTypes, NO_ARGS, attr, (a,row) -> extractPgType(a, row, mappings)))
-                            .build()).get();
+            define(session, snapshot.rows, snapshot.attributes).get();
         }
         catch(ExecutionException | InterruptedException e) {
             throw new RuntimeException(e);
         }
+
+        return checksum(session, true).thenCompose((current) -> {
+                if(current[0] == snapshot.version && current[1] == snapshot.checksum) {
+                    return CompletableFuture.completedFuture(true);
+                }
+
+                this.key = current;
+                return refresh(session, snapshot.rows).thenApply((v) -> false); })
+            .thenApplyAsync((current) -> {
+                    if(!current) {
+                        saveTypes(file);
+                    }
+
+                    return current; });
+    }
+
+    //Everything known so far, lazily loaded types included, keyed by the checksum
+    //taken when the types were loaded or last refreshed
+    public void saveTypes(final File file) {
+        final long[] current = key;
+        final Session at = session;
+        if(current == null || at == null) {
+            throw new IllegalStateException("Types have not been loaded from a server");
+        }
+
+        try {
+            new TypeSnapshot(server, (int) current[0], current[1], names(at),
+                             new ArrayList<>(known.values()), new HashMap<>(knownAttributes)).write(file);
+        }
+        catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Rows that changed or went away since the snapshot are dropped and whatever the
+    //server has for them now is defined again, everything else is left alone
+    private CompletableFuture<Void> refresh(final Session session, final List<TypeRow> previous) {
+        final List<String> where = new ArrayList<>();
+        final List<String> names = names(session);
+        if(!names.isEmpty()) {
+            where.add("ns.nspname || '.' || typ.typname in (" + quoted(names) + ")");
+        }
+
+        final List<Integer> oids = new ArrayList<>();
+        for(TypeRow row : previous) {
+            oids.add(row.oid);
+        }
+
+        if(!oids.isEmpty()) {
+            where.add("typ.oid in (" + list(oids) + ")");
+        }
+
+        if(where.isEmpty()) {
+            return RESOLVED;
+        }
+
+        final String sqlTypes = TYPES + "where " + String.join(" or ", where);
+        return run(session, true, applyRows(sqlTypes, NO_ARGS, new ArrayList<>(), PgTypeRegistry::extractType))
+            .thenCompose((rows) -> attributes(session, true, rows).thenCompose((attributes) -> {
+                        final Map<Integer,TypeRow> current = new HashMap<>();
+                        for(TypeRow row : rows) {
+                            current.put(row.oid, row);
+                        }
+
+                        for(TypeRow row : previous) {
+                            final TypeRow now = current.get(row.oid);
+                            if(now == null || !now.same(row) ||
+                               !Objects.equals(attributes.get(now.relId), knownAttributes.get(row.relId))) {
+                                forget(row);
+                            }
+                        }
+
+                        final List<TypeRow> changed = new ArrayList<>();
+                        for(TypeRow row : rows) {
+                            if(!known.containsKey(row.oid)) {
+                                changed.add(row);
+                            }
+                        }
+
+                        return define(session, changed, attributes); }));
+    }
+
+    private void forget(final TypeRow row) {
+        known.remove(row.oid);
+        if(row.relId != PgType.DEFAULT_RELID) {
+            knownAttributes.remove(row.relId);
+        }
+
+        final PgType pgType = byOid.get(row.oid);
+        if(pgType != null) {
+            byOid.remove(row.oid, pgType);
+            byOid.remove(row.arrayId, pgType);
+            pgTypeMap.remove(row.name, pgType);
+            pgTypeMap.remove(pgType.getType(), pgType);
+            version.incrementAndGet();
+        }
+    }
+
+    private volatile Session session;
+    private final ConcurrentMap<Integer,CompletableFuture<Void>> resolving = new ConcurrentHashMap<>();
+    private final Set<Integer> unmappable = ConcurrentHashMap.newKeySet();
+    private static final CompletableFuture<Void> RESOLVED = CompletableFuture.completedFuture(null);
+
+    //Unknown oids are looked up with one catalog query on the session's catalog channel.
+    //An oid already being looked up by someone else is waited on, not queried again.
+    @Override
+    public CompletableFuture<Void> resolve(final int[] oids) {
+        final Session current = session;
+        if(current == null) {
+            return RESOLVED;
+        }
+
+        final List<CompletableFuture<Void>> waits = new ArrayList<>();
+        final List<Integer> load = new ArrayList<>();
+        final CompletableFuture<Void> mine = new CompletableFuture<>();
+        for(int oid : oids) {
+            if(oid == 0 || byOid.get(oid) != null || unmappable.contains(oid)) {
+                continue;
+            }
+
+            final CompletableFuture<Void> existing = resolving.putIfAbsent(oid, mine);
+            if(existing == null) {
+                load.add(oid);
+            }
+            else if(existing != mine) {
+                waits.add(existing);
+            }
+        }
+
+        if(!load.isEmpty()) {
+            waits.add(mine);
+            lookup(current, load, mine);
+        }
+
+        if(waits.isEmpty()) {
+            return RESOLVED;
+        }
+
+        return CompletableFuture.allOf(waits.toArray(new CompletableFuture<?>[waits.size()]));
+    }
+
+    private void lookup(final Session session, final List<Integer> oids, final CompletableFuture<Void> future) {
+        final String in = list(oids);
+        final String sqlTypes = TYPES + "where typ.oid in (" + in + ") or typ.typarray in (" + in + ")";
+        run(session, true, applyRows(sqlTypes, NO_ARGS, new ArrayList<>(), PgTypeRegistry::extractType))
+            .thenCompose((rows) -> attributes(session, true, rows).thenCompose((attributes) -> define(session, rows, attributes)))
+            .whenComplete((v, t) -> {
+                    for(Integer oid : oids) {
+                        if(t == null && byOid.get(oid) == null) {
+                            //pseudo types and the like, don't ask again
+                            unmappable.add(oid);
+                        }
+
+                        resolving.remove(oid, future);
+                    }
+
+                    if(t != null) {
+                        future.completeExceptionally(t);
+                    }
+                    else {
+                        future.complete(null);
+                    } });
+    }
+
+    //Composites become records, enums without a mapping are read as text and domains
+    //are read like their base type. Attribute and base types get resolved as well,
+    //except the ones in this batch: those are defined here, and resolving them would
+    //wait on the lookup that is waiting on this.
+    private CompletableFuture<Void> define(final Session session, final List<TypeRow> rows,
+                                           final Map<Integer,SortedSet<PgAttribute>> attributes) {
+        final Set<Integer> batch = new HashSet<>();
+        for(TypeRow row : rows) {
+            batch.add(row.oid);
+            batch.add(row.arrayId);
+        }
+
+        final List<Integer> dependencies = new ArrayList<>();
+        final List<TypeRow> domains = new ArrayList<>();
+        for(TypeRow row : rows) {
+            known.put(row.oid, row);
+            if(attributes.containsKey(row.relId)) {
+                knownAttributes.put(row.relId, attributes.get(row.relId));
+            }
+
+            final boolean composite = row.relId != PgType.DEFAULT_RELID && attributes.containsKey(row.relId);
+            if(composite) {
+                for(PgAttribute attr : attributes.get(row.relId)) {
+                    dependencies.add(attr.getTypeId());
+                }
+            }
+
+            final Mapping mapping = mapping(session, row.name);
+            if(mapping != null) {
+                add(row.toPgType(mapping, attributes.get(row.relId)));
+            }
+            else if(composite) {
+                add(row.toPgType(new Mapping(Record.class, row.name, Record::write, Record::read), attributes.get(row.relId)));
+            }
+            else if("e".equals(row.kind) && pgType("pg_catalog.text") != null) {
+                addByOid(row.toPgType(renamed(pgType("pg_catalog.text"), row.name), null));
+            }
+            else if("d".equals(row.kind)) {
+                domains.add(row);
+                dependencies.add(row.baseType);
+            }
+        }
+
+        dependencies.removeAll(batch);
+        final int[] oids = new int[dependencies.size()];
+        for(int i = 0; i < oids.length; ++i) {
+            oids[i] = dependencies.get(i);
+        }
+
+        return resolve(oids).thenRun(() -> defineDomains(domains));
+    }
+
+    //a domain over another domain in the same batch has to wait for that one
+    private void defineDomains(final List<TypeRow> domains) {
+        final List<TypeRow> waiting = new ArrayList<>(domains);
+        boolean progress = true;
+        while(progress) {
+            progress = false;
+            for(Iterator<TypeRow> iter = waiting.iterator(); iter.hasNext(); ) {
+                final TypeRow row = iter.next();
+                final PgType base = pgType(row.baseType);
+                if(base != null) {
+                    addByOid(row.toPgType(renamed(base, row.name), base.getAttributes()));
+                    iter.remove();
+                    progress = true;
+                }
+            }
+        }
+    }
+
+    private static Mapping renamed(final PgType pgType, final String name) {
+        final Mapping mapping = pgType.getMapping();
+        return new Mapping(mapping.type, name, mapping.writer, mapping.reader);
+    }
+
+    //types that share a java class with another type are only found by oid and name
+    private void addByOid(final PgType val) {
+        byOid.put(val.getOid(), val);
+        byOid.put(val.getArrayId(), val);
+        pgTypeMap.put(val.getName(), val);
+        version.incrementAndGet();
     }
 }
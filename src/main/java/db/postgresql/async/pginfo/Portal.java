@@ -19,6 +19,17 @@ public class Portal {
         return id;
     }
 
+    private Portal(final Statement statement, final String id) {
+        this.statement = statement;
+        this.id = id;
+    }
+
+    //The unnamed portal lives until the next Bind or Sync, fine for anything
+    //fetched in one go without a Sync in between
+    public static Portal unnamed(final Statement statement) {
+        return new Portal(statement, "");
+    }
+
     public Portal(final Statement statement) {
         this.statement = statement;
         if(statement.getId().equals("")) {
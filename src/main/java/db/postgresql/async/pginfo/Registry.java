@@ -1,7 +1,25 @@
 package db.postgresql.async.pginfo;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface Registry {
     PgType pgType(Integer oid);
     PgType pgType(String name);
     PgType pgType(Class type);
+
+    //decoding asks for every value, implementations should answer without boxing
+    default PgType pgType(final int oid) {
+        return pgType(Integer.valueOf(oid));
+    }
+
+    //moves whenever types are added or dropped, anything built from lookups is good
+    //until it does
+    default int version() {
+        return 0;
+    }
+
+    //completes once every oid the registry can map is loaded
+    default CompletableFuture<Void> resolve(final int[] oids) {
+        return CompletableFuture.completedFuture(null);
+    }
 }
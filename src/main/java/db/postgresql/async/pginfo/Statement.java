@@ -10,10 +10,10 @@ public class Statement {
     
     private static final AtomicInteger counter = new AtomicInteger(0);
 
-    private final RowDescription rowDescription;
+    private RowDescription rowDescription;
     public RowDescription getRowDescription() { return rowDescription; }
     
-    private final ParameterDescription parameterDescription;
+    private ParameterDescription parameterDescription;
     public ParameterDescription getParameterDescription() { return parameterDescription; }
 
     public Statement(final String id,
@@ -24,6 +24,25 @@ public class Statement {
         this.rowDescription = rowDescription;
     }
 
+    //statement whose Parse is in flight, the descriptions are filled in
+    //when the response to its Describe arrives
+    public Statement(final String id) {
+        this.id = id;
+    }
+
+    public boolean isDescribed() {
+        return rowDescription != null;
+    }
+
+    public void describe(final ParameterDescription parameterDescription, final RowDescription rowDescription) {
+        if(isDescribed()) {
+            throw new IllegalStateException("Statement " + id + " has already been described");
+        }
+
+        this.parameterDescription = parameterDescription;
+        this.rowDescription = rowDescription;
+    }
+
     private final String id;
     
     public String getId() {
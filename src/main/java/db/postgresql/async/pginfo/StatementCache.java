@@ -1,21 +1,142 @@
 package db.postgresql.async.pginfo;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import db.postgresql.async.messages.FrontEndMessage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+//Statements prepared on a single connection. The cache is only touched by the task
+//currently running on its IO channel, so no locking is done here. Once it holds more
+//than maxSize statements the least recently used one is evicted and its id is queued
+//so the next prepare can close it on the server.
 public class StatementCache {
-    private final ConcurrentMap<String,Statement> cache = new ConcurrentHashMap<>(20, 0.75f, 1);
+
+    public static final int UNBOUNDED = 0;
+
+    public static class Stats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        public long getHits() { return hits.get(); }
+        public long getMisses() { return misses.get(); }
+        public long getEvictions() { return evictions.get(); }
+
+        @Override
+        public String toString() {
+            return String.format("StatementCache.Stats(hits: %d, misses: %d, evictions: %d)",
+                                 getHits(), getMisses(), getEvictions());
+        }
+    }
+
+    private final int maxSize;
+    private final Stats stats;
+    private final Deque<String> toClose = new ArrayDeque<>();
+
+    private final Map<String,Statement> cache = new LinkedHashMap<String,Statement>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String,Statement> eldest) {
+            if(maxSize != UNBOUNDED && size() > maxSize) {
+                toClose.add(eldest.getValue().getId());
+                stats.evictions.incrementAndGet();
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    };
+
+    public StatementCache() {
+        this(UNBOUNDED, new Stats());
+    }
+
+    public StatementCache(final int maxSize, final Stats stats) {
+        this.maxSize = maxSize;
+        this.stats = stats;
+    }
 
     public void store(final String query, final Statement statement) {
-        cache.put(query, statement);
+        final Statement previous = cache.put(query, statement);
+        if(previous != null && previous != statement) {
+            toClose.add(previous.getId());
+        }
+    }
+
+    //only removes the entry if it still maps to statement, the statement is not
+    //closed since this is used when it never made it to the server
+    public void remove(final String query, final Statement statement) {
+        if(cache.get(query) == statement) {
+            cache.remove(query);
+        }
+    }
+
+    //for statements the server has but that can't be used, they are closed the next
+    //time closes are written
+    public void evict(final String query, final Statement statement) {
+        if(cache.get(query) == statement) {
+            cache.remove(query);
+            toClose.add(statement.getId());
+        }
     }
 
     public Statement statement(final String query) {
-        return (Statement) cache.get(query);
+        final Statement ret = cache.get(query);
+        if(ret == null) {
+            stats.misses.incrementAndGet();
+        }
+        else {
+            stats.hits.incrementAndGet();
+        }
+
+        return ret;
+    }
+
+    //Parse and Describe for a new statement, then as many pending Closes as fit. The
+    //statement is only stored once its Parse is in the buffer, if Parse and Describe
+    //don't both fit the buffer is left as it was and null comes back.
+    public Statement prepare(final FrontEndMessage feMessage, final String query) {
+        final int start = feMessage.buffer.position();
+        final Statement statement = new Statement(Statement.nextId());
+        if(!feMessage.parse(statement.getId(), query, FrontEndMessage.EMPTY_OIDS) ||
+           !feMessage.describeStatement(statement.getId())) {
+            feMessage.buffer.position(start);
+            return null;
+        }
+
+        writeCloses(feMessage);
+        store(query, statement);
+        return statement;
     }
 
     public int size() {
         return cache.size();
     }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    public int getPendingCloses() {
+        return toClose.size();
+    }
+
+    //Writes Close messages for evicted statements, stops when the buffer is full.
+    //Caller is responsible for following up with a Sync and accepting the
+    //CloseComplete responses.
+    public int writeCloses(final FrontEndMessage feMessage) {
+        int written = 0;
+        while(!toClose.isEmpty() && feMessage.closeStatement(toClose.peek())) {
+            toClose.poll();
+            ++written;
+        }
+
+        return written;
+    }
 }
@@ -0,0 +1,133 @@
+package db.postgresql.async.pginfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+//The catalog rows behind a registry, written to a local file so a new process can
+//skip loading them from the server. The key is the server it came from, the server
+//version and a checksum of the type catalog at the time it was taken.
+class TypeSnapshot {
+
+    private static final int MAGIC = 0x50475459;
+    private static final int FORMAT = 1;
+
+    final String server;
+    final int version;
+    final long checksum;
+    final List<String> names;
+    final List<PgTypeRegistry.TypeRow> rows;
+    final Map<Integer,SortedSet<PgAttribute>> attributes;
+
+    TypeSnapshot(final String server, final int version, final long checksum, final List<String> names,
+                 final List<PgTypeRegistry.TypeRow> rows, final Map<Integer,SortedSet<PgAttribute>> attributes) {
+        this.server = server;
+        this.version = version;
+        this.checksum = checksum;
+        this.names = names;
+        this.rows = rows;
+        this.attributes = attributes;
+    }
+
+    //null when there is no file or it isn't a snapshot this code can read
+    static TypeSnapshot read(final File file) throws IOException {
+        if(!file.isFile()) {
+            return null;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return null;
+            }
+
+            final String server = in.readUTF();
+            final int version = in.readInt();
+            final long checksum = in.readLong();
+            final int nameCount = in.readInt();
+            final List<String> names = new ArrayList<>(nameCount);
+            for(int i = 0; i < nameCount; ++i) {
+                names.add(in.readUTF());
+            }
+
+            final int rowCount = in.readInt();
+            final List<PgTypeRegistry.TypeRow> rows = new ArrayList<>(rowCount);
+            final Map<Integer,SortedSet<PgAttribute>> attributes = new HashMap<>();
+            for(int i = 0; i < rowCount; ++i) {
+                final PgTypeRegistry.TypeRow row = new PgTypeRegistry.TypeRow(in.readInt(), in.readUTF(), in.readInt(),
+                                                                              in.readInt(), in.readUTF(), in.readInt());
+                final int attributeCount = in.readInt();
+                if(attributeCount > 0) {
+                    final SortedSet<PgAttribute> set = new TreeSet<>();
+                    for(int j = 0; j < attributeCount; ++j) {
+                        set.add(new PgAttribute(row.relId, in.readUTF(), in.readInt(), in.readShort()));
+                    }
+
+                    attributes.put(row.relId, set);
+                }
+
+                rows.add(row);
+            }
+
+            return new TypeSnapshot(server, version, checksum, names, rows, attributes);
+        }
+    }
+
+    //written next to the target and moved over it so readers never see half a file
+    void write(final File file) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        final File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(server);
+                out.writeInt(version);
+                out.writeLong(checksum);
+                out.writeInt(names.size());
+                for(String name : names) {
+                    out.writeUTF(name);
+                }
+
+                out.writeInt(rows.size());
+                for(PgTypeRegistry.TypeRow row : rows) {
+                    out.writeInt(row.oid);
+                    out.writeUTF(row.name);
+                    out.writeInt(row.arrayId);
+                    out.writeInt(row.relId);
+                    out.writeUTF(row.kind);
+                    out.writeInt(row.baseType);
+                    final SortedSet<PgAttribute> set = attributes.get(row.relId);
+                    if(row.relId == PgType.DEFAULT_RELID || set == null) {
+                        out.writeInt(0);
+                        continue;
+                    }
+
+                    out.writeInt(set.size());
+                    for(PgAttribute attr : set) {
+                        out.writeUTF(attr.getName());
+                        out.writeInt(attr.getTypeId());
+                        out.writeShort(attr.getNum());
+                    }
+                }
+            }
+
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            tmp.delete();
+        }
+    }
+}
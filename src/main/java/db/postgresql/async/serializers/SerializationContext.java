@@ -22,7 +22,7 @@ public class SerializationContext {
         private CharsetDecoder decoder = null;
 
         private int nextAllocation(final int size) {
-            int accum = MIN * size;
+            int accum = MIN;
             while(accum < size && accum != MAX) {
                 accum *= 2;
             }
@@ -91,6 +91,23 @@ public class SerializationContext {
         registry.set(val);
     }
 
+    private static final ThreadLocal<int[]> offsets = new ThreadLocal<int[]>() {
+            @Override protected int[] initialValue() {
+                return new int[64];
+            } };
+
+    //Scratch space for the column offsets of the row being processed on this thread.
+    //Rows of the same description are processed one at a time, so they can share it.
+    public static int[] offsets(final int size) {
+        int[] ret = offsets.get();
+        if(ret.length < size) {
+            ret = new int[Math.max(size, ret.length * 2)];
+            offsets.set(ret);
+        }
+
+        return ret;
+    }
+
     private static final ThreadLocal<IO> currentIO = new ThreadLocal<IO>();
 
     public static void io(final IO io) {
@@ -1,15 +1,20 @@
 package db.postgresql.async.tasks;
 
 import db.postgresql.async.CommandStatus;
+import db.postgresql.async.IO;
 import db.postgresql.async.PostgresqlException;
 import db.postgresql.async.Task;
 import db.postgresql.async.TaskState;
 import db.postgresql.async.TransactionStatus;
 import db.postgresql.async.messages.*;
+import db.postgresql.async.pginfo.Registry;
 import db.postgresql.async.pginfo.StatementCache;
+import db.postgresql.async.serializers.SerializationContext;
 import java.nio.ByteBuffer;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -22,6 +27,8 @@ public abstract class BaseTask<T> implements Task<T> {
 
     private boolean executed;
     private Throwable error;
+    private volatile boolean typesLoading;
+    private volatile Throwable typesError;
     protected TaskState nextState = TaskState.start();
     protected CommandComplete commandComplete;
     protected ReadyForQuery readyForQuery;
@@ -86,7 +93,18 @@ public abstract class BaseTask<T> implements Task<T> {
               readBuffer.hasRemaining() &&
               (needs = BackEnd.needs(readBuffer)) == 0) {
             final int pos = readBuffer.position();
-            final Response resp = BackEnd.find(readBuffer.get(pos)).builder.apply(readBuffer);
+            final BackEnd backEnd = BackEnd.find(readBuffer.get(pos));
+            if(backEnd == BackEnd.DataRow && typesFailed()) {
+                //without its types the row can't be decoded
+                readBuffer.position(pos + 1 + readBuffer.getInt(pos + 1));
+                continue;
+            }
+
+            if(backEnd == BackEnd.DataRow && shouldPause()) {
+                break;
+            }
+            
+            final Response resp = backEnd.builder.apply(readBuffer);
 
             if(resp.getBackEnd().outOfBand) {
                 onOob(resp);
@@ -103,6 +121,56 @@ public abstract class BaseTask<T> implements Task<T> {
         return needs;
     }
     
+    //Tasks that deliver rows to someone who can push back override this, the pump
+    //stops in front of the next data row while it returns true
+    protected boolean shouldPause() {
+        return typesLoading;
+    }
+
+    //When the types couldn't be loaded the task fails with the reason why
+    protected boolean typesFailed() {
+        final Throwable t = typesError;
+        if(t != null && error == null) {
+            setError(t);
+        }
+
+        return t != null;
+    }
+
+    //Types the registry doesn't know yet are loaded on the side, rows wait in the read
+    //buffer (the task pauses in front of them) until they are in
+    protected void resolveTypes(final ParameterDescription parameters, final RowDescription rows) {
+        final Registry registry = SerializationContext.registry();
+        final IO io = SerializationContext.io();
+        if(registry == null || io == null || !io.getPool().resolvesTypes()) {
+            return;
+        }
+
+        final int paramCount = (parameters == null) ? 0 : parameters.getOids().length;
+        final int[] oids = new int[paramCount + rows.length()];
+        for(int i = 0; i < paramCount; ++i) {
+            oids[i] = parameters.getOids()[i];
+        }
+
+        for(int i = 0; i < rows.length(); ++i) {
+            oids[paramCount + i] = rows.field(i).getTypeOid();
+        }
+
+        typesLoading = true;
+        final CompletableFuture<Void> loading = registry.resolve(oids);
+        final boolean waiting = !loading.isDone();
+        loading.whenComplete((v, t) -> {
+                if(t != null) {
+                    typesError = (t instanceof CompletionException) ? t.getCause() : t;
+                }
+
+                typesLoading = false;
+                if(waiting) {
+                    io.resume();
+                }
+            });
+    }
+    
     public void onFail(Throwable t) {
         nextState = TaskState.terminate();
     }
@@ -0,0 +1,251 @@
+package db.postgresql.async.tasks;
+
+import db.postgresql.async.TaskState;
+import db.postgresql.async.messages.CommandComplete;
+import db.postgresql.async.messages.DataRow;
+import db.postgresql.async.messages.Format;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Notice;
+import db.postgresql.async.messages.ParameterDescription;
+import db.postgresql.async.messages.ReadyForQuery;
+import db.postgresql.async.messages.Response;
+import db.postgresql.async.messages.RowDescription;
+import db.postgresql.async.pginfo.Portal;
+import db.postgresql.async.pginfo.Statement;
+import db.postgresql.async.pginfo.StatementCache;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+//Executes a prepared statement once per set of arguments with a single Sync at the
+//end, so the whole batch is one implicit transaction and the server only answers
+//with one ReadyForQuery. Rows are written as Bind/Execute pairs through the unnamed
+//portal, as many as fit in the write buffer, then a Flush. The responses for that
+//chunk are read before the next one goes out so neither side's socket buffer can fill
+//up with unread data. The last chunk ends with the Sync instead of a Flush. After an
+//error the server skips everything up to the Sync, so one is sent if it hasn't been.
+public class BatchTask extends BaseTask<int[]> {
+
+    private final String sql;
+    private final List<List<Object>> args;
+    private final int[] counts;
+
+    private StatementCache cache;
+    private Statement statement;
+    private Portal portal;
+    private boolean preparing = false;
+    private ParameterDescription parameterDescription;
+    private int written = 0;
+    private int completed = 0;
+    private int chunks = 0;
+    private boolean synced = false;
+    private boolean carry = false;
+    private boolean unterminated = false;
+
+    public BatchTask(final String sql, final List<List<Object>> args) {
+        this.sql = sql;
+        this.args = args;
+        this.counts = new int[args.size()];
+    }
+
+    //number of Flush/Sync terminated chunks written so far
+    public int getChunks() {
+        return chunks;
+    }
+
+    //Parse/Describe when needed, then the first chunk. A pipeline may have filled the
+    //buffer with other frames, then this waits for the next write.
+    private void begin(final FrontEndMessage feMessage) {
+        if(statement == null) {
+            statement = cache.prepare(feMessage, sql);
+            if(statement == null) {
+                if(feMessage.buffer.position() > 0) {
+                    carry = true;
+                    nextState = TaskState.write();
+                }
+                else {
+                    setError(new IllegalArgumentException("Statement does not fit in the write buffer"));
+                    sync(feMessage);
+                }
+
+                return;
+            }
+
+            preparing = true;
+        }
+
+        portal = Portal.unnamed(statement);
+        if(args.isEmpty()) {
+            sync(feMessage);
+        }
+        else {
+            writeChunk(feMessage);
+        }
+    }
+
+    private void sync(final FrontEndMessage feMessage) {
+        feMessage.sync();
+        synced = true;
+        nextState = TaskState.write();
+    }
+
+    //Flush, or the Sync after the last row
+    private boolean terminate(final FrontEndMessage feMessage) {
+        if(written < args.size()) {
+            return feMessage.flush();
+        }
+
+        synced = feMessage.sync();
+        return synced;
+    }
+
+    //Only rows counted in this chunk are ever given back to make room for its Flush
+    //or Sync, earlier chunks are already on the wire. A chunk's only row is kept and
+    //its Flush or Sync goes out at the start of the next write instead.
+    private void writeChunk(final FrontEndMessage feMessage) {
+        final int first = written;
+        final int start = feMessage.buffer.position();
+        int last = start;
+        while(written < args.size()) {
+            final int before = feMessage.buffer.position();
+            if(!feMessage.bindExecute(portal, args.get(written), Format.BINARY)) {
+                break;
+            }
+
+            last = before;
+            ++written;
+        }
+
+        if(written == first) {
+            if(start > 0) {
+                //whatever is ahead of this chunk goes out on its own, the chunk
+                //starts over in an empty buffer
+                carry = true;
+                nextState = TaskState.write();
+            }
+            else {
+                setError(new IllegalArgumentException("Arguments do not fit in the write buffer"));
+                sync(feMessage);
+            }
+
+            return;
+        }
+
+        boolean terminated = terminate(feMessage);
+        if(!terminated && written > first + 1) {
+            feMessage.buffer.position(last);
+            --written;
+            terminated = terminate(feMessage);
+        }
+
+        unterminated = !terminated;
+        ++chunks;
+        nextState = TaskState.write();
+    }
+
+    private void described(final RowDescription rowDescription) {
+        if(preparing && !statement.isDescribed()) {
+            statement.describe(parameterDescription, rowDescription);
+        }
+    }
+
+    private boolean readProcessor(final Response resp) {
+        switch(resp.getBackEnd()) {
+        case DataRow:
+            ((DataRow) resp).finish();
+            return true;
+        case CommandComplete:
+            commandComplete = (CommandComplete) resp;
+            counts[completed++] = commandComplete.getRows();
+            return true;
+        case BindComplete:
+            return true;
+        case ParseComplete:
+            return true;
+        case CloseComplete:
+            return true;
+        case ParameterDescription:
+            parameterDescription = (ParameterDescription) resp;
+            return true;
+        case RowDescription:
+            described(((RowDescription) resp).toBinary());
+            return true;
+        case NoData:
+            described(RowDescription.EMPTY);
+            return true;
+        case ReadyForQuery:
+            readyForQuery = (ReadyForQuery) resp;
+            return false;
+        default:
+            setError(new UnsupportedOperationException(resp.getBackEnd() + " is not a valid response"));
+            return true;
+        }
+    }
+
+    private void computeNextState(final FrontEndMessage feMessage, final int needs) {
+        if(needs > 0) {
+            nextState = TaskState.needs(needs);
+        }
+        else if(readyForQuery != null) {
+            if(preparing && !statement.isDescribed()) {
+                cache.remove(sql, statement);
+            }
+
+            nextState = TaskState.finished();
+        }
+        else if(synced) {
+            nextState = TaskState.read();
+        }
+        else if(getError() != null) {
+            sync(feMessage);
+        }
+        else if(completed == written) {
+            writeChunk(feMessage);
+        }
+        else {
+            nextState = TaskState.read();
+        }
+    }
+
+    @Override
+    public void onStart(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        statement = cache.statement(sql);
+        begin(feMessage);
+    }
+
+    @Override
+    public void onWrite(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        if(unterminated) {
+            unterminated = false;
+            terminate(feMessage);
+            nextState = TaskState.write();
+        }
+        else if(carry) {
+            carry = false;
+            begin(feMessage);
+        }
+        else {
+            nextState = TaskState.read();
+        }
+    }
+
+    @Override
+    public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        computeNextState(feMessage, pump(readBuffer, this::readProcessor));
+    }
+
+    @Override
+    public void onError(final Notice val) {
+        //keep reading, the Sync still has to go out and be answered
+        setError(val.toException());
+    }
+
+    @Override
+    public void setStatementCache(final StatementCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public int[] getResult() {
+        return counts;
+    }
+}
@@ -9,13 +9,19 @@ import db.postgresql.async.messages.*;
 import db.postgresql.async.pginfo.StatementCache;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+//Payloads are collected as slices of the read buffer while it is pumped and then
+//written out together, a gathering channel like a file gets one write for everything
+//that arrived in a read instead of one per CopyData (which is usually one row).
 public class CopyFromServerTask extends BaseTask<Long> {
 
     private final String sql;
@@ -23,6 +29,7 @@ public class CopyFromServerTask extends BaseTask<Long> {
     private CopyResponse copyOutResponse;
     private boolean copyDone;
     private long total;
+    private final List<ByteBuffer> payloads = new ArrayList<>();
 
     public Long getResult() {
         return total;
@@ -44,17 +51,9 @@ public class CopyFromServerTask extends BaseTask<Long> {
             copyOutResponse = (CopyResponse) r;
             return true;
         case CopyData:
-            CopyData cd = (CopyData) r;
-            cd.toChannel(channel);
-            total += cd.getCopied();
+            payloads.add(((CopyData) r).payload());
             return true;
         case CopyDone:
-            try {
-                channel.close();
-            }
-            catch(IOException ioe) {
-                setError(ioe);
-            }
             copyDone = true;
             return true;
         case CommandComplete:
@@ -69,8 +68,46 @@ public class CopyFromServerTask extends BaseTask<Long> {
         }
     }
 
+    private void drain() {
+        try {
+            if(!payloads.isEmpty()) {
+                final ByteBuffer[] all = payloads.toArray(new ByteBuffer[payloads.size()]);
+                payloads.clear();
+                if(channel instanceof GatheringByteChannel) {
+                    final GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                    long remaining = 0L;
+                    for(ByteBuffer payload : all) {
+                        remaining += payload.remaining();
+                    }
+
+                    while(remaining > 0L) {
+                        final long written = gathering.write(all);
+                        remaining -= written;
+                        total += written;
+                    }
+                }
+                else {
+                    for(ByteBuffer payload : all) {
+                        while(payload.hasRemaining()) {
+                            total += channel.write(payload);
+                        }
+                    }
+                }
+            }
+
+            if(copyDone && channel.isOpen()) {
+                channel.close();
+            }
+        }
+        catch(IOException ioe) {
+            setError(ioe);
+        }
+    }
+
     public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
         int needs = pump(readBuffer, this::readProcessor);
+        //the slices point into the read buffer, they have to go before it is compacted
+        drain();
         if(getHasErrorResponse()) {
             return;
         }
@@ -0,0 +1,210 @@
+package db.postgresql.async.tasks;
+
+import db.postgresql.async.Row;
+import db.postgresql.async.TaskState;
+import db.postgresql.async.messages.CommandComplete;
+import db.postgresql.async.messages.CopyResponse;
+import db.postgresql.async.messages.DataRow;
+import db.postgresql.async.messages.FieldDescriptor;
+import db.postgresql.async.messages.Format;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Notice;
+import db.postgresql.async.messages.ReadyForQuery;
+import db.postgresql.async.messages.Response;
+import db.postgresql.async.messages.RowDescription;
+import db.postgresql.async.pginfo.PgType;
+import db.postgresql.async.pginfo.Registry;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.BiFunction;
+
+//Runs a COPY ... TO STDOUT (FORMAT binary) and hands every tuple to func as a Row.
+//A binary COPY tuple is laid out exactly like the body of a DataRow, so each one is
+//decoded in place through a DataRow view with the registry's PgType readers. COPY
+//doesn't describe its columns, the caller names them and gives the Java type of each
+//so the right PgType can be found. The columns are matched by position, so the map
+//must have an order: a LinkedHashMap (insertion order) or a SortedMap, anything else
+//is rejected. The server sends whole tuples in each CopyData message, which is what
+//this relies on.
+public class CopyRowsFromServerTask<T> extends BaseTask<T> {
+
+    private static final byte[] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 };
+
+    private final String sql;
+    private final Map<String,Class<?>> columns;
+    private final BiFunction<T,Row,T> func;
+    private T accumulator;
+
+    private RowDescription description;
+    private Registry registry;
+    private boolean header = false;
+    private long rows = 0L;
+
+    public CopyRowsFromServerTask(final String sql, final Map<String,Class<?>> columns,
+                                  final T accumulator, final BiFunction<T,Row,T> func) {
+        if(!(columns instanceof LinkedHashMap) && !(columns instanceof SortedMap)) {
+            throw new IllegalArgumentException("columns must be a LinkedHashMap or a SortedMap, " +
+                                               columns.getClass().getName() + " has no column order");
+        }
+
+        this.sql = sql;
+        this.columns = columns;
+        this.accumulator = accumulator;
+        this.func = func;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public T getResult() {
+        return accumulator;
+    }
+
+    private void describe(final CopyResponse response) {
+        if(response.getFormat() != Format.BINARY) {
+            throw new IllegalStateException("COPY must use the binary format");
+        }
+
+        if(response.getColumnFormats().length != columns.size()) {
+            throw new IllegalStateException("COPY returns " + response.getColumnFormats().length +
+                                            " columns, " + columns.size() + " were given");
+        }
+
+        registry = SerializationContext.registry();
+        final FieldDescriptor[] fields = new FieldDescriptor[columns.size()];
+        int index = 0;
+        for(Map.Entry<String,Class<?>> entry : columns.entrySet()) {
+            final Class<?> type = entry.getValue();
+            final PgType pgType = registry.pgType(type);
+            if(pgType == null) {
+                throw new IllegalArgumentException("No mapping for " + type.getName());
+            }
+
+            final int oid = (type.isArray() && type != byte[].class) ? pgType.getArrayId() : pgType.getOid();
+            fields[index++] = FieldDescriptor.binary(entry.getKey(), oid);
+        }
+
+        description = RowDescription.of(fields);
+    }
+
+    private void header(final ByteBuffer buffer) {
+        for(byte b : SIGNATURE) {
+            if(buffer.get() != b) {
+                throw new IllegalStateException("Not a binary COPY stream");
+            }
+        }
+
+        buffer.getInt(); //flags
+        final int extension = buffer.getInt();
+        buffer.position(buffer.position() + extension);
+        header = true;
+    }
+
+    private int tupleEnd(final ByteBuffer buffer, final int start, final int count) {
+        int pos = start + 2;
+        for(int i = 0; i < count; ++i) {
+            pos += 4 + Math.max(buffer.getInt(pos), 0);
+        }
+
+        return pos;
+    }
+
+    private void tuples(final ByteBuffer buffer, final int end) {
+        if(!header) {
+            header(buffer);
+        }
+
+        while(buffer.position() < end) {
+            final int start = buffer.position();
+            final short count = buffer.getShort(start);
+            if(count == -1) {
+                buffer.position(start + 2);
+                continue;
+            }
+
+            final int tupleEnd = tupleEnd(buffer, start, count);
+            final int limit = buffer.limit();
+            buffer.limit(tupleEnd);
+            final DataRow row = DataRow.view(buffer.slice(), description, registry);
+            buffer.limit(limit);
+            buffer.position(tupleEnd);
+            ++rows;
+            row.with(() -> accumulator = func.apply(accumulator, row));
+        }
+    }
+
+    private boolean readProcessor(final Response resp, final ByteBuffer readBuffer) {
+        switch(resp.getBackEnd()) {
+        case CopyOutResponse:
+            try {
+                describe((CopyResponse) resp);
+            }
+            catch(Throwable t) {
+                setError(t);
+            }
+
+            return true;
+        case CopyData: {
+            //once anything fails the rest of the data is only skipped
+            final int end = readBuffer.position() + resp.getSize();
+            try {
+                if(getError() == null) {
+                    tuples(readBuffer, end);
+                }
+            }
+            catch(Throwable t) {
+                setError(t);
+            }
+            finally {
+                readBuffer.position(end);
+            }
+
+            return true;
+        }
+        case CopyDone:
+            return true;
+        case CommandComplete:
+            commandComplete = (CommandComplete) resp;
+            return true;
+        case ReadyForQuery:
+            readyForQuery = (ReadyForQuery) resp;
+            return false;
+        default:
+            setError(new UnsupportedOperationException("Not expecting: " + resp.getBackEnd()));
+            return true;
+        }
+    }
+
+    @Override
+    public void onStart(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        fe.query(sql);
+        nextState = TaskState.write();
+    }
+
+    @Override
+    public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        final int needs = pump(readBuffer, (resp) -> readProcessor(resp, readBuffer));
+        if(needs > 0) {
+            nextState = TaskState.needs(needs);
+        }
+        else if(readyForQuery != null) {
+            nextState = TaskState.finished();
+        }
+        else {
+            nextState = TaskState.read();
+        }
+    }
+
+    @Override
+    public void onError(final Notice val) {
+        //keep reading, ReadyForQuery follows
+        if(getError() == null) {
+            setError(val.toException());
+        }
+    }
+}
@@ -8,7 +8,12 @@ import db.postgresql.async.TransactionStatus;
 import db.postgresql.async.messages.*;
 import db.postgresql.async.pginfo.StatementCache;
 import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.List;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -19,9 +24,9 @@ public class CopyToServerTask extends BaseTask<Long> {
 
     private final String sql;
     private final ReadableByteChannel channel;
-    private CopyResponse copyInResponse;
-    private boolean channelComplete;
-    private long total;
+    protected CopyResponse copyInResponse;
+    protected boolean channelComplete;
+    protected long total;
 
     public Long getResult() {
         return total;
@@ -110,4 +115,191 @@ public class CopyToServerTask extends BaseTask<Long> {
             writePossible(fe);
         }
     }
+
+    //Rows of Java objects sent in the binary COPY format, the result is the number
+    //of rows written. If a row can't be encoded the copy is cancelled with CopyFail.
+    public static class Binary extends CopyToServerTask {
+
+        private final CopyWriter writer;
+
+        public Binary(final String sql, final Iterator<? extends List<?>> rows) {
+            super(sql, null);
+            this.writer = new CopyWriter(rows);
+        }
+
+        @Override
+        public Long getResult() {
+            return writer.getRows();
+        }
+
+        @Override
+        protected void writePossible(final FrontEndMessage fe) {
+            if(channelComplete) {
+                nextState = TaskState.read();
+                return;
+            }
+
+            try {
+                if(getError() == null && !writer.isFinished()) {
+                    writer.write(fe);
+                }
+            }
+            catch(Throwable t) {
+                setError(t);
+            }
+
+            if(getError() != null) {
+                channelComplete = fe.copyFail(getError().toString());
+            }
+            else if(writer.isFinished()) {
+                channelComplete = fe.copyDone();
+            }
+
+            nextState = TaskState.write();
+        }
+
+        @Override
+        public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+            final int needs = pump(readBuffer, this::readProcessor);
+            if(needs > 0) {
+                nextState = TaskState.needs(needs);
+            }
+            else if(readyForQuery != null) {
+                nextState = TaskState.finished();
+            }
+            else if(copyInResponse != null && !channelComplete) {
+                writePossible(fe);
+            }
+            else {
+                nextState = TaskState.read();
+            }
+        }
+
+        @Override
+        public void onError(final Notice val) {
+            //the server follows up with ReadyForQuery, keep the first error around
+            if(getError() == null) {
+                setError(val.toException());
+            }
+        }
+    }
+
+    //A file, or the region [start, end) of one, sent from memory mapped windows. Bytes
+    //go from the page cache straight into the write buffer without a read call per
+    //buffer, and every CopyData is as big as the write buffer allows. prefix and suffix
+    //(e.g. the binary COPY header and trailer for a region) go out before and after the
+    //region. The task owns the file, it is closed however the task ends: finished,
+    //failed, timed out or terminated.
+    public static class Mapped extends CopyToServerTask {
+
+        private static final long WINDOW = 64L * 1024L * 1024L;
+        private static final ByteBuffer NONE = ByteBuffer.allocate(0);
+
+        private final FileChannel file;
+        private final long end;
+        private final ByteBuffer prefix;
+        private final ByteBuffer suffix;
+        private long position;
+        private MappedByteBuffer window;
+
+        public Mapped(final String sql, final FileChannel file) throws IOException {
+            this(sql, file, 0L, file.size(), NONE, NONE);
+        }
+
+        public Mapped(final String sql, final FileChannel file, final long start, final long end,
+                      final ByteBuffer prefix, final ByteBuffer suffix) {
+            super(sql, file);
+            this.file = file;
+            this.position = start;
+            this.end = end;
+            this.prefix = prefix.duplicate();
+            this.suffix = suffix.duplicate();
+        }
+
+        private ByteBuffer source() throws IOException {
+            if(prefix.hasRemaining()) {
+                return prefix;
+            }
+
+            if(window != null && window.hasRemaining()) {
+                return window;
+            }
+
+            if(position < end) {
+                final long length = Math.min(WINDOW, end - position);
+                window = file.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+                return window;
+            }
+
+            window = null;
+            return suffix.hasRemaining() ? suffix : null;
+        }
+
+        @Override
+        protected void writePossible(final FrontEndMessage fe) {
+            if(channelComplete) {
+                nextState = TaskState.read();
+                return;
+            }
+
+            try {
+                final ByteBuffer source = source();
+                if(source != null) {
+                    total += fe.copyData(source);
+                }
+                else {
+                    channelComplete = true;
+                    fe.copyDone();
+                }
+
+                nextState = TaskState.write();
+            }
+            catch(Throwable t) {
+                setError(t);
+                channelComplete = true;
+                fe.copyFail(t.toString());
+                nextState = TaskState.write();
+            }
+        }
+
+        @Override
+        public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+            super.onRead(fe, readBuffer);
+            closeWhenDone();
+        }
+
+        @Override
+        public void onWrite(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+            super.onWrite(fe, readBuffer);
+            closeWhenDone();
+        }
+
+        @Override
+        public void onFail(final Throwable t) {
+            super.onFail(t);
+            closeWhenDone();
+        }
+
+        @Override
+        public void onTimeout(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+            super.onTimeout(fe, readBuffer);
+            closeWhenDone();
+        }
+
+        private void closeWhenDone() {
+            final TaskState.Next next = nextState.next;
+            if(next != TaskState.Next.FINISHED && next != TaskState.Next.TERMINATE) {
+                return;
+            }
+
+            window = null;
+            try {
+                file.close();
+            }
+            catch(IOException e) {
+                //nothing more to do with it
+            }
+        }
+    }
 }
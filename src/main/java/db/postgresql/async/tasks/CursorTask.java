@@ -62,6 +62,11 @@ public class CursorTask<T> extends AnonymousTask<T> {
         }
     }
 
+    @Override
+    public boolean isSingleFlight() {
+        return false;
+    }
+
     @Override
     public String getSql() {
         return op.toCommand(cursor.getName());
@@ -28,8 +28,13 @@ public class ExecuteTask<T> extends BaseTask<T> {
     protected T accumulator;
 
     private StatementCache cache;
+    private Statement statement;
+    private boolean preparing = false;
+    private ParameterDescription parameterDescription;
     private int executionCount = 0;
-    private TaskPhase phase;
+    private int syncCount = 0;
+    private int rfqCount = 0;
+    private boolean bound = false;
     
     public ExecuteTask(final String sql, final List<List<Object>> args,
                        final T accumulator,
@@ -38,159 +43,164 @@ public class ExecuteTask<T> extends BaseTask<T> {
         this.args = args;
         this.accumulator = accumulator;
         this.func = func;
-        this.phase = new PreparePhase();
     }
 
-    private interface TaskPhase {
-        void onRead(FrontEndMessage feMessage, ByteBuffer readBuffer);
-        void onWrite(FrontEndMessage feMessage, ByteBuffer readBuffer);
-        void onStart(FrontEndMessage feMessage, ByteBuffer readBuffer);
+    //An uncached statement is prepared in the same flight as its executions: Parse,
+    //Describe, then Bind/Execute/Sync for each set of arguments. The statement goes
+    //into the cache as soon as its Parse is written so later tasks on this channel
+    //can bind to it, the server processes it before anything written after it.
+    private void prepare(final FrontEndMessage feMessage) {
+        statement = cache.prepare(feMessage, sql);
+        if(statement == null) {
+            return;
+        }
+
+        preparing = true;
+        if(args.isEmpty() && feMessage.sync()) {
+            ++syncCount;
+        }
     }
 
-    public class PreparePhase implements TaskPhase {
-        private String id;
-        private RowDescription rowDescription;
-        private ParameterDescription parameterDescription;
-        private int rfqCount = 0;
-        
-        public boolean isNeeded() {
-            return cache.statement(sql) == null;
+    private boolean isWrittenOut() {
+        return (statement != null && executionCount == args.size() &&
+                !(preparing && args.isEmpty() && syncCount == 0));
+    }
+
+    //Whatever doesn't fit is carried over to the next write. Only a buffer that was
+    //empty to begin with and still can't take the next message is an error, a
+    //pipeline may have filled it with other tasks' frames.
+    private void writePossible(final FrontEndMessage feMessage) {
+        if(getError() != null) {
+            computeNextState(0);
+            return;
         }
 
-        private void computeNextState(final int needs, final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-            if(needs > 0) {
-                nextState = TaskState.needs(needs);
-            }
-            else if(rfqCount == 2) {
-                phase = new ExecutePhase();
-                phase.onStart(feMessage, readBuffer);
-            }
-            else {
-                nextState = TaskState.read();
-            }
+        final int start = feMessage.buffer.position();
+        if(statement == null) {
+            prepare(feMessage);
+        }
+        else if(preparing && args.isEmpty() && syncCount == 0 && feMessage.sync()) {
+            ++syncCount;
         }
 
-        private boolean readProcessor(final Response resp) {
-            switch(resp.getBackEnd()) {
-            case RowDescription:
-                rowDescription = (RowDescription) resp;
-                return true;
-            case ParameterDescription:
-                parameterDescription = (ParameterDescription) resp;
-                return true;
-            case ParseComplete:
-                return true;
-            case NoData:
-                rowDescription = RowDescription.EMPTY;
-                SerializationContext.description(rowDescription);
-                return true;
-            case ReadyForQuery:
-                ++rfqCount;
-                if(rfqCount == 1) {
-                    return true;
-                }
-                else {
-                    final Statement stmt = new Statement(id, parameterDescription, rowDescription.toBinary());
-                    cache.store(sql, stmt);
-                    return false;
-                }
-            default:
-                setError(new UnsupportedOperationException(resp.getBackEnd() + " is not a valid response"));
-                return false;
+        while(statement != null && executionCount < args.size()) {
+            if(feMessage.bindExecuteSync(statement, args.get(executionCount), Format.BINARY)) {
+                ++executionCount;
+                ++syncCount;
+            }
+            else {
+                break;
             }
         }
 
-        public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-            computeNextState(pump(readBuffer, this::readProcessor), feMessage, readBuffer);
+        if(feMessage.buffer.position() > start || (start > 0 && !isWrittenOut())) {
+            nextState = TaskState.write();
         }
-
-        public void onWrite(FrontEndMessage feMessage, ByteBuffer readBuffer) {
-            nextState = TaskState.read();
+        else if(statement == null) {
+            setError(new IllegalArgumentException("Statement does not fit in the write buffer"));
+            computeNextState(0);
         }
-        
-        public void onStart(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-            if(isNeeded()) {
-                id = Statement.nextId();
-                feMessage.parse(id, sql, FrontEndMessage.EMPTY_OIDS);
-                feMessage.sync();
-                feMessage.describeStatement(id);
-                feMessage.sync();
+        else if(!isWrittenOut()) {
+            setError(new IllegalArgumentException("Arguments do not fit in the write buffer"));
+            if(preparing && syncCount == 0 && feMessage.sync()) {
+                //the Parse already went out, the server needs a Sync to answer it
+                ++syncCount;
                 nextState = TaskState.write();
             }
             else {
-                phase = new ExecutePhase();
-                phase.onStart(feMessage, readBuffer);
+                computeNextState(0);
             }
         }
+        else {
+            computeNextState(0);
+        }
     }
 
-    public class ExecutePhase implements TaskPhase {
-
-        private boolean readProcessor(final Response resp) {
-            switch(resp.getBackEnd()) {
-            case DataRow:
-                onDataRow((DataRow) resp);
-                return true;
-            case BindComplete:
-                return true;
-            case CommandComplete:
-                onCommandComplete((CommandComplete) resp);
-                return true;
-            case ReadyForQuery:
-                readyForQuery = (ReadyForQuery) resp;
-                return false;
-            default:
-                setError(new UnsupportedOperationException(resp.getBackEnd() + " is not a valid response"));
-                return false;
-            }
+    private void described(final RowDescription rowDescription) {
+        if(preparing && !statement.isDescribed()) {
+            statement.describe(parameterDescription, rowDescription);
+            resolveTypes(parameterDescription, rowDescription);
         }
+    }
 
-        private void computeNextState(final int needs) {
-            if(needs > 0) {
-                nextState = TaskState.needs(needs);
-            }
-            else if(readyForQuery != null) {
-                nextState = TaskState.finished();
-            }
-            else {
-                nextState = TaskState.read();
-            }
+    private boolean readProcessor(final Response resp) {
+        switch(resp.getBackEnd()) {
+        case DataRow:
+            onDataRow((DataRow) resp);
+            return true;
+        case BindComplete:
+            bound = true;
+            SerializationContext.description(statement.getRowDescription());
+            return true;
+        case CommandComplete:
+            onCommandComplete((CommandComplete) resp);
+            return true;
+        case ParseComplete:
+            return true;
+        case CloseComplete:
+            return true;
+        case ParameterDescription:
+            parameterDescription = (ParameterDescription) resp;
+            return true;
+        case RowDescription:
+            described(((RowDescription) resp).toBinary());
+            return true;
+        case NoData:
+            described(RowDescription.EMPTY);
+            return true;
+        case ReadyForQuery:
+            readyForQuery = (ReadyForQuery) resp;
+            ++rfqCount;
+            return rfqCount < syncCount;
+        default:
+            setError(new UnsupportedOperationException(resp.getBackEnd() + " is not a valid response"));
+            return false;
         }
+    }
 
-        private void writePossible(final FrontEndMessage feMessage, final ByteBuffer buffer) {
-            final Statement statement = cache.statement(sql);
-            boolean wrote = false;
-            while(executionCount < args.size()) {
-                final boolean success = feMessage.bindExecuteSync(statement, args.get(executionCount), Format.BINARY);
-                if(success) {
-                    ++executionCount;
-                    wrote = true;
-                }
-                else {
-                    break;
-                }
-            }
-            
-            if(wrote) {
-                nextState = TaskState.write();
+    private void computeNextState(final int needs) {
+        if(needs > 0) {
+            nextState = TaskState.needs(needs);
+        }
+        else if(rfqCount == syncCount) {
+            if(preparing && !statement.isDescribed()) {
+                //Parse failed, don't let anyone else bind to it
+                cache.remove(sql, statement);
             }
-            else {
-                SerializationContext.description(statement.getRowDescription());
-                nextState = TaskState.read();
+            else if(typesFailed()) {
+                //its rows can't be read, the next use prepares it again
+                cache.evict(sql, statement);
             }
+            
+            nextState = TaskState.finished();
         }
-
-        public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-            computeNextState(pump(readBuffer, this::readProcessor));
+        else if(shouldPause()) {
+            nextState = TaskState.pause();
+        }
+        else {
+            nextState = TaskState.read();
         }
+    }
+
+    @Override
+    public void onStart(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        statement = cache.statement(sql);
+        writePossible(feMessage);
+    }
+
+    @Override
+    public void onWrite(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        writePossible(feMessage);
+    }
 
-        public void onWrite(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-            writePossible(feMessage, readBuffer);
+    @Override
+    public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        //reads don't always complete on the thread that saw BindComplete
+        if(bound) {
+            SerializationContext.description(statement.getRowDescription());
         }
         
-        public void onStart(FrontEndMessage feMessage, ByteBuffer readBuffer) {
-            writePossible(feMessage, readBuffer);
-        }
+        computeNextState(pump(readBuffer, this::readProcessor));
     }
 
     @Override
@@ -198,6 +208,17 @@ public class ExecuteTask<T> extends BaseTask<T> {
         this.cache = cache;
     }
 
+    @Override
+    public boolean isSingleFlight() {
+        return true;
+    }
+
+    @Override
+    public boolean isWritten() {
+        return isWrittenOut();
+    }
+
+
     protected void onDataRow(final DataRow dataRow) {
         try {
             dataRow.with(() -> accumulator = func.apply(accumulator, dataRow));
@@ -209,7 +230,6 @@ public class ExecuteTask<T> extends BaseTask<T> {
 
     protected void onCommandComplete(final CommandComplete val) {
         commandComplete = val;
-        --executionCount;
     }
 
     @Override
@@ -217,21 +237,6 @@ public class ExecuteTask<T> extends BaseTask<T> {
         return accumulator;
     }
 
-    @Override
-    public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-        phase.onRead(feMessage, readBuffer);
-    }
-
-    @Override
-    public void onWrite(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-        phase.onWrite(feMessage, readBuffer);
-    }
-
-    @Override
-    public void onStart(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
-        phase.onStart(feMessage, readBuffer);
-    }
-
     public static class BulkExecute extends ExecuteTask<List<Integer>> {
         
         public BulkExecute(final String sql, final List<List<Object>> args) {
@@ -267,6 +272,7 @@ public class ExecuteTask<T> extends BaseTask<T> {
 
         @Override
         protected void onDataRow(final DataRow dataRow) {
+            dataRow.finish();
             setError(new UnsupportedOperationException());
         }
     }
@@ -283,6 +289,7 @@ public class ExecuteTask<T> extends BaseTask<T> {
 
         @Override
         protected void onDataRow(final DataRow dataRow) {
+            dataRow.finish();
             setError(new UnsupportedOperationException());
         }
     }
@@ -1,33 +1,38 @@
 package db.postgresql.async.tasks;
 
-import db.postgresql.async.SessionInfo;
-import db.postgresql.async.CompletableTask;
-import db.postgresql.async.Task;
+import db.postgresql.async.DuplexTask;
+import db.postgresql.async.IO;
+import db.postgresql.async.NotificationDispatcher;
+import db.postgresql.async.PostgresqlException;
 import db.postgresql.async.TaskState;
-import db.postgresql.async.messages.BackEnd;
 import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Notice;
 import db.postgresql.async.messages.Notification;
 import db.postgresql.async.messages.ReadyForQuery;
 import db.postgresql.async.messages.Response;
+import db.postgresql.async.serializers.SerializationContext;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
-import static java.util.stream.Collectors.joining;
 
-//TODO: enforce write checks in front end message
-public class NotificationTask extends BaseTask<Void> implements CompletableTask<Void> {
+//Owns the dedicated notification channel for the life of the session. A read is
+//always outstanding so notifications are handed to their consumers as soon as they
+//arrive, listen/unlisten requests are written on the side as they come in. Each
+//request is a simple query, its ReadyForQuery completes the oldest submitted action.
+public class NotificationTask extends BaseTask<Void> implements DuplexTask<Void> {
 
     private static class Action {
         final Consumer<Notification> consumer;
         final String channel;
         final CompletableFuture<Void> future;
-        boolean submitted = false;
+        PostgresqlException error;
 
         public Action(final String channel, final Consumer<Notification> consumer) {
             this.channel = channel;
@@ -38,37 +43,73 @@ public class NotificationTask extends BaseTask<Void> implements CompletableTask<
 
     private final Consumer<Notification> DELETE = (n) -> {};
     private final ConcurrentMap<String,Consumer<Notification>> subscribed = new ConcurrentHashMap<>(50, 0.75f, 1);
-    private final List<Action> actions = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedDeque<Action> pending = new ConcurrentLinkedDeque<>();
+    private final Queue<Action> submitted = new ConcurrentLinkedQueue<>();
     private volatile boolean shuttingDown = false;
+    private volatile boolean terminated = false;
+    private volatile IO io;
+    private final NotificationDispatcher dispatcher;
+
+    //taken off the channel but refused by a full dispatcher queue, reading stops
+    //until it has been handed over
+    private Notification parked;
+    private Consumer<Notification> parkedConsumer;
+
+    public NotificationTask() {
+        this(null);
+    }
 
-    public NotificationTask() { }
+    //without a dispatcher consumers run on the IO thread
+    public NotificationTask(final NotificationDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
 
     public void shutdown() {
         shuttingDown = true;
+        wake();
+    }
+
+    //after the channel is replaced the server has forgotten every listen, so they
+    //are sent again before anything else
+    public void relisten() {
+        for(ConcurrentMap.Entry<String,Consumer<Notification>> entry : subscribed.entrySet()) {
+            pending.addFirst(new Action(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private void wake() {
+        final IO current = io;
+        if(current != null) {
+            current.writeQueued();
+        }
     }
-    
+
     private boolean readProcessor(final Response resp) {
         switch(resp.getBackEnd()) {
         case CommandComplete:
             return true;
         case NotificationResponse:
-            complete((Notification) resp);
-            return true;
+            return complete((Notification) resp);
         case ReadyForQuery:
             complete((ReadyForQuery) resp);
-            return false;
+            return true;
         default:
             throw new UnsupportedOperationException("Can't handle back end of type " + resp.getBackEnd());
         }
     }
 
     private void complete(final ReadyForQuery rfq) {
-        if(actions.size() == 0) {
+        final Action action = submitted.poll();
+        if(action == null) {
             return;
         }
 
-        final Action action = actions.get(0);
-        if(!action.submitted) {
+        if(action.error != null) {
+            if(action.consumer != DELETE) {
+                subscribed.remove(action.channel, action.consumer);
+            }
+
+            action.future.completeExceptionally(action.error);
             return;
         }
 
@@ -76,76 +117,136 @@ public class NotificationTask extends BaseTask<Void> implements CompletableTask<
             subscribed.remove(action.channel);
         }
 
-        actions.remove(0);
         action.future.complete(null);
     }
 
-    private void complete(final Notification n) {
+    private boolean complete(final Notification n) {
         final Consumer<Notification> consumer = subscribed.get(n.getChannel());
-        if(consumer != null) {
+        if(consumer == null) {
+            return true;
+        }
+
+        if(dispatcher == null) {
             consumer.accept(n);
+            return true;
         }
-    }
 
-    private void maintenance(final FrontEndMessage fe) {
-        if(shuttingDown) {
-            nextState = TaskState.terminate();
-            return;
+        if(dispatcher.offer(n, consumer, this::resume)) {
+            return true;
         }
-        
-        if(actions.size() > 0) {
-            final Action current = actions.get(0);
-            if(current.consumer == DELETE) {
-                fe.query(String.format("unlisten %s", current.channel));
-            }
-            else {
-                fe.query(String.format("listen %s", current.channel));
-                subscribed.put(current.channel, current.consumer);
-            }
 
-            actions.get(0).submitted = true;
-            nextState = TaskState.write();
+        parked = n;
+        parkedConsumer = consumer;
+        return false;
+    }
+
+    private void resume() {
+        final IO current = io;
+        if(current != null) {
+            current.resume();
         }
     }
 
-    private void computeNextState(final int needs, final FrontEndMessage fe) {
-        if(needs > 0) {
-            nextState = TaskState.needs(needs);
+    @Override
+    public void onError(final Notice val) {
+        final Action action = submitted.peek();
+        if(action != null) {
+            action.error = val.toException();
         }
-        else if(actions.size() > 0) {
-            maintenance(fe);
+    }
+
+    @Override
+    public boolean hasWrites() {
+        return !terminated && (shuttingDown || !pending.isEmpty());
+    }
+
+    @Override
+    public boolean prepareWrite(final FrontEndMessage fe) {
+        if(shuttingDown) {
+            //server hangs up after this, the read sees end of stream and the channel closes
+            terminated = fe.terminate();
+            return terminated;
         }
-        else {
-            nextState = TaskState.finished();
+
+        boolean wrote = false;
+        Action action;
+        while((action = pending.peek()) != null) {
+            final String sql = String.format((action.consumer == DELETE) ? "unlisten %s" : "listen %s", action.channel);
+            if(!fe.query(sql)) {
+                break;
+            }
+
+            pending.poll();
+            if(action.consumer != DELETE) {
+                subscribed.put(action.channel, action.consumer);
+            }
+
+            submitted.add(action);
+            wrote = true;
         }
+
+        return wrote;
     }
 
     @Override
     public void onStart(final FrontEndMessage fe, final ByteBuffer readBuffer) {
-        if(actions.size() > 0) {
-            maintenance(fe);
+        io = SerializationContext.io();
+        nextState = TaskState.read();
+    }
+
+    @Override
+    public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        if(parked != null) {
+            if(!dispatcher.offer(parked, parkedConsumer, this::resume)) {
+                nextState = TaskState.pause();
+                return;
+            }
+
+            parked = null;
+            parkedConsumer = null;
+        }
+
+        final int needs = pump(readBuffer, this::readProcessor);
+        if(parked != null) {
+            nextState = TaskState.pause();
+        }
+        else if(needs > 0) {
+            nextState = TaskState.needs(needs);
         }
         else {
-            //force at least one trip to server and back
-            fe.sync();
-            nextState = TaskState.write();
+            nextState = TaskState.read();
         }
     }
 
     @Override
-    public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
-        computeNextState(pump(readBuffer, this::readProcessor), fe);
+    public void onFail(final Throwable t) {
+        io = null;
+        //whatever was in flight is gone with the channel, try it again on the next one
+        final List<Action> inFlight = new ArrayList<>(submitted);
+        submitted.clear();
+        for(int i = inFlight.size() - 1; i >= 0; --i) {
+            if(shuttingDown) {
+                inFlight.get(i).future.completeExceptionally(t);
+            }
+            else {
+                pending.addFirst(inFlight.get(i));
+            }
+        }
+
+        nextState = TaskState.terminate();
     }
-    
+
     public CompletableFuture<Void> add(final String channel, final Consumer<Notification> consumer) {
         final Action action = new Action(channel, consumer);
-        actions.add(action);
+        pending.add(action);
+        wake();
         return action.future;
     }
 
     public CompletableFuture<Void> remove(final String channel) {
         final Action action = new Action(channel, DELETE);
-        actions.add(action);
+        pending.add(action);
+        wake();
         return action.future;
     }
 
@@ -0,0 +1,325 @@
+package db.postgresql.async.tasks;
+
+import db.postgresql.async.CommandStatus;
+import db.postgresql.async.CompletableTask;
+import db.postgresql.async.MultiStageException;
+import db.postgresql.async.Task;
+import db.postgresql.async.TaskState;
+import db.postgresql.async.TransactionStatus;
+import db.postgresql.async.messages.BackEnd;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Response;
+import db.postgresql.async.pginfo.StatementCache;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+//Runs several independent tasks on one IO channel without waiting for a round
+//trip between them. Tasks are written back to back as long as the previously
+//written task is single flight, responses go to the oldest unfinished task until
+//it sees its final ReadyForQuery. Tasks that are not single flight still work,
+//the pipeline just waits for them to finish before writing the next task.
+public class PipelineTask implements CompletableTask<List<Object>> {
+
+    private boolean executed;
+    private final List<CompletableTask<?>> tasks;
+    private final List<Object> results;
+    private final CompletableFuture<List<Object>> future = new CompletableFuture<>();
+    private Map<BackEnd,Consumer<Response>> oobHandlers;
+    private StatementCache cache;
+    private TaskState nextState = TaskState.start();
+
+    //tasks before reading are finished, tasks from reading up to writing are
+    //waiting on responses, if flushing is set then tasks[writing] still has
+    //messages in the write buffer, if buffered is set then tasks before writing
+    //have frames in the write buffer that haven't been sent
+    private int reading = 0;
+    private int writing = 0;
+    private boolean flushing = false;
+    private boolean buffered = false;
+
+    public PipelineTask(final List<? extends Task<?>> tasks) {
+        this.tasks = new ArrayList<>(tasks.size());
+        this.results = new ArrayList<>(tasks.size());
+        for(Task<?> task : tasks) {
+            if(task.isExecuted()) {
+                throw new IllegalStateException("Task has already been executed");
+            }
+
+            task.executed();
+            this.tasks.add(task.toCompletable());
+        }
+    }
+
+    public List<CompletableTask<?>> getTasks() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    public void executed() {
+        executed = true;
+    }
+
+    public boolean isExecuted() {
+        return executed;
+    }
+
+    public CompletableFuture<List<Object>> getFuture() {
+        return future;
+    }
+
+    @Override
+    public boolean isSingleFlight() {
+        return tasks.stream().allMatch(Task::isSingleFlight);
+    }
+
+    private static boolean isDone(final TaskState state) {
+        return state.next == TaskState.Next.FINISHED || state.next == TaskState.Next.TERMINATE;
+    }
+
+    private boolean canStart() {
+        return writing < tasks.size() && (writing == reading || tasks.get(writing - 1).isSingleFlight());
+    }
+
+    private Task<?> current() {
+        return tasks.get(Math.min(reading, tasks.size() - 1));
+    }
+
+    private boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    private void finished() {
+        while(reading < writing && isDone(tasks.get(reading).getNextState())) {
+            results.add(result(tasks.get(reading)));
+            ++reading;
+        }
+    }
+
+    private static Object result(final Task<?> task) {
+        return (task.getError() == null) ? task.getResult() : null;
+    }
+
+    private void complete() {
+        nextState = TaskState.finished();
+        final List<Task<?>> failedTasks = tasks.stream()
+            .filter((t) -> t.getError() != null)
+            .collect(Collectors.toList());
+
+        if(failedTasks.size() == 0) {
+            future.complete(results);
+        }
+        else if(failedTasks.size() == 1) {
+            future.completeExceptionally(failedTasks.get(0).getError());
+        }
+        else {
+            future.completeExceptionally(new MultiStageException(failedTasks));
+        }
+    }
+
+    private void startTasks(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        while(canStart()) {
+            final CompletableTask<?> task = tasks.get(writing);
+            task.setOobHandlers(oobHandlers);
+            task.setStatementCache(cache);
+            task.onStart(fe, readBuffer);
+            if(task.getNextState().next == TaskState.Next.WRITE) {
+                if(!task.isWritten()) {
+                    flushing = true;
+                    nextState = TaskState.write();
+                    return;
+                }
+
+                //all of its frames are in the buffer, the next task's go right behind
+                //them and everything is sent once the buffer is full or nothing is left
+                task.onWrite(fe, readBuffer);
+                buffered = true;
+            }
+
+            ++writing;
+            finished();
+        }
+
+        computeNextState();
+    }
+
+    private void computeNextState() {
+        if(reading == tasks.size()) {
+            complete();
+        }
+        else if(flushing || buffered) {
+            nextState = TaskState.write();
+        }
+        else if(reading < writing) {
+            final TaskState state = tasks.get(reading).getNextState();
+            nextState = (state.next == TaskState.Next.READ) ? state : TaskState.read();
+        }
+    }
+
+    private void outOfOrder(final Task<?> task) {
+        final IllegalStateException e = new IllegalStateException("Task requested a write while later tasks " +
+                                                                  "were waiting on responses");
+        task.setError(e);
+        onFail(e);
+    }
+
+    @Override
+    public List<Object> getResult() {
+        return results;
+    }
+
+    @Override
+    public Throwable getError() {
+        for(Task<?> task : tasks) {
+            if(task.getError() != null) {
+                return task.getError();
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void setError(final Throwable t) {
+        if(!isEmpty()) {
+            current().setError(t);
+        }
+    }
+
+    @Override
+    public CommandStatus getCommandStatus() {
+        return isEmpty() ? null : current().getCommandStatus();
+    }
+
+    @Override
+    public TransactionStatus getTransactionStatus() {
+        return isEmpty() ? null : current().getTransactionStatus();
+    }
+
+    @Override
+    public TaskState getNextState() {
+        return nextState;
+    }
+
+    @Override
+    public void onStart(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        startTasks(fe, readBuffer);
+    }
+
+    @Override
+    public void onWrite(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        buffered = false;
+        if(!flushing) {
+            startTasks(fe, readBuffer);
+            return;
+        }
+
+        final CompletableTask<?> task = tasks.get(writing);
+        task.onWrite(fe, readBuffer);
+        if(task.getNextState().next == TaskState.Next.WRITE) {
+            if(!task.isWritten()) {
+                return;
+            }
+
+            task.onWrite(fe, readBuffer);
+            buffered = true;
+        }
+
+        flushing = false;
+        ++writing;
+        finished();
+        startTasks(fe, readBuffer);
+    }
+
+    @Override
+    public void onRead(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        while(reading < writing && readBuffer.hasRemaining()) {
+            final CompletableTask<?> task = tasks.get(reading);
+            task.onRead(fe, readBuffer);
+            final TaskState state = task.getNextState();
+            if(isDone(state)) {
+                finished();
+            }
+            else if(state.next == TaskState.Next.READ || state.next == TaskState.Next.PAUSE) {
+                nextState = state;
+                return;
+            }
+            else if(reading + 1 != writing || flushing) {
+                outOfOrder(task);
+                return;
+            }
+            else {
+                //only outstanding task wants to talk to the server again,
+                //e.g. an execute task that just prepared its statement
+                writing = reading;
+                if(state.next == TaskState.Next.START) {
+                    task.onStart(fe, readBuffer);
+                }
+
+                if(task.getNextState().next == TaskState.Next.WRITE) {
+                    flushing = true;
+                    nextState = TaskState.write();
+                    return;
+                }
+
+                ++writing;
+                finished();
+            }
+        }
+
+        startTasks(fe, readBuffer);
+    }
+
+    @Override
+    public void onFail(final Throwable t) {
+        for(int i = reading; i < tasks.size(); ++i) {
+            tasks.get(i).onFail(t);
+        }
+
+        nextState = TaskState.terminate();
+        future.completeExceptionally(t);
+    }
+
+    @Override
+    public void onTimeout(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        //responses for the remaining tasks can't be matched up after a
+        //timeout, so everything after the current task is failed and the
+        //channel is closed instead of going back to the pool
+        final Throwable t = new IllegalStateException("Pipelined task timed out");
+        current().onTimeout(fe, readBuffer);
+        results.add(result(current()));
+        for(int i = reading + 1; i < tasks.size(); ++i) {
+            tasks.get(i).setError(t);
+            tasks.get(i).onFail(t);
+        }
+
+        reading = tasks.size();
+        complete();
+        nextState = TaskState.terminate();
+    }
+
+    @Override
+    public long getTimeout() {
+        return isEmpty() ? 0L : (flushing ? tasks.get(writing) : current()).getTimeout();
+    }
+
+    @Override
+    public TimeUnit getUnits() {
+        return isEmpty() ? TimeUnit.SECONDS : (flushing ? tasks.get(writing) : current()).getUnits();
+    }
+
+    @Override
+    public void setOobHandlers(final Map<BackEnd,Consumer<Response>> oobHandlers) {
+        this.oobHandlers = oobHandlers;
+    }
+
+    @Override
+    public void setStatementCache(final StatementCache cache) {
+        this.cache = cache;
+    }
+}
@@ -0,0 +1,77 @@
+package db.postgresql.async.tasks;
+
+import db.postgresql.async.*;
+import java.util.function.*;
+import java.util.*;
+
+//Writes BEGIN, every stage and COMMIT as one pipeline, so the whole transaction costs
+//a single round trip. Stages are all applied to the accumulator up front, which means
+//a stage can't depend on what an earlier stage put in the accumulator. Once a stage
+//fails the server rejects the rest of the block and turns the COMMIT into a rollback,
+//the first error is what the transaction fails with. If the pipeline ends with the
+//transaction still open (a stage failed to write, a timeout) a ROLLBACK follows.
+public class PipelinedTransactionIterator<T> implements TaskIterator<T> {
+
+    private final Concurrency concurrency;
+    private final List<Function<T,Task<?>>> stages;
+    private final T accumulator;
+    private boolean issuedPipeline = false;
+    private boolean issuedRollback = false;
+
+    public PipelinedTransactionIterator(final Concurrency concurrency, final T accumulator,
+                                        final List<Function<T,Task<?>>> stages) {
+        this.concurrency = concurrency;
+        this.accumulator = accumulator;
+        this.stages = new ArrayList<>(stages);
+    }
+
+    public T getAccumulator() { return accumulator; }
+
+    public boolean hasNext(final Task<?> task) {
+        if(task == null) {
+            return true;
+        }
+
+        if(issuedRollback) {
+            return false;
+        }
+
+        final TransactionStatus status = task.getTransactionStatus();
+        return status != null && status != TransactionStatus.IDLE;
+    }
+
+    public Task<?> next() {
+        if(issuedPipeline) {
+            issuedRollback = true;
+            return SimpleTask.rollback();
+        }
+
+        issuedPipeline = true;
+        try {
+            final List<Task<?>> tasks = new ArrayList<>(stages.size() + 2);
+            tasks.add(SimpleTask.begin(concurrency));
+            boolean terminal = false;
+            for(Function<T,Task<?>> stage : stages) {
+                final Task<?> task = stage.apply(accumulator);
+                tasks.add(task);
+                if(task.isTerminal()) {
+                    terminal = true;
+                    break;
+                }
+            }
+
+            if(!terminal) {
+                tasks.add(SimpleTask.commit());
+            }
+
+            return new PipelineTask(tasks);
+        }
+        catch(Throwable t) {
+            //nothing has been written yet, but the transaction still has to fail
+            final Task<?> task = SimpleTask.rollback();
+            task.setError(t);
+            issuedRollback = true;
+            return task;
+        }
+    }
+}
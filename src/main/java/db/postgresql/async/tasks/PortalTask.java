@@ -0,0 +1,247 @@
+package db.postgresql.async.tasks;
+
+import db.postgresql.async.Row;
+import db.postgresql.async.TaskState;
+import db.postgresql.async.messages.CommandComplete;
+import db.postgresql.async.messages.DataRow;
+import db.postgresql.async.messages.Format;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Notice;
+import db.postgresql.async.messages.ParameterDescription;
+import db.postgresql.async.messages.ReadyForQuery;
+import db.postgresql.async.messages.Response;
+import db.postgresql.async.messages.RowDescription;
+import db.postgresql.async.pginfo.Portal;
+import db.postgresql.async.pginfo.Statement;
+import db.postgresql.async.pginfo.StatementCache;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.BiFunction;
+
+//Fetches the results of a prepared statement fetchSize rows at a time through the
+//unnamed portal. Each batch is an Execute(maxRows) followed by a Flush, the server
+//answers with PortalSuspended until the last batch ends in CommandComplete. Nothing
+//is synced until then so the portal stays open, which means at most one batch of
+//rows is ever sitting in the read buffer. If anything fails a Sync is sent so the
+//server gets out of its error state before the channel is reused.
+public class PortalTask<T> extends BaseTask<T> {
+
+    private final String sql;
+    private final List<Object> args;
+    private final int fetchSize;
+    private final BiFunction<T,Row,T> func;
+    private T accumulator;
+
+    private StatementCache cache;
+    private Statement statement;
+    private Portal portal;
+    private boolean preparing = false;
+    private ParameterDescription parameterDescription;
+    private boolean bound = false;
+    private boolean suspended = false;
+    private boolean synced = false;
+    private boolean started = false;
+    private int fetches = 0;
+
+    public PortalTask(final String sql, final List<Object> args, final int fetchSize,
+                      final T accumulator, final BiFunction<T,Row,T> func) {
+        if(fetchSize <= 0) {
+            throw new IllegalArgumentException("fetchSize must be positive");
+        }
+
+        this.sql = sql;
+        this.args = args;
+        this.fetchSize = fetchSize;
+        this.accumulator = accumulator;
+        this.func = func;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    //number of Execute messages sent so far
+    public int getFetches() {
+        return fetches;
+    }
+
+    //Parse/Describe when needed, then Bind and the first Execute. Whatever doesn't fit
+    //waits for the next write, only a buffer that was empty to begin with and still
+    //can't take it is an error.
+    private void begin(final FrontEndMessage feMessage) {
+        final int start = feMessage.buffer.position();
+        if(statement == null) {
+            statement = cache.prepare(feMessage, sql);
+            preparing = (statement != null);
+        }
+
+        if(statement != null) {
+            final int bindStart = feMessage.buffer.position();
+            portal = Portal.unnamed(statement);
+            if(feMessage.bind(portal, args, Format.BINARY) && feMessage.execute(portal, fetchSize) && feMessage.flush()) {
+                started = true;
+                ++fetches;
+                nextState = TaskState.write();
+                return;
+            }
+
+            feMessage.buffer.position(bindStart);
+        }
+
+        if(feMessage.buffer.position() > start || start > 0) {
+            nextState = TaskState.write();
+        }
+        else {
+            setError(new IllegalArgumentException((statement == null) ?
+                                                  "Statement does not fit in the write buffer" :
+                                                  "Arguments do not fit in the write buffer"));
+            sync(feMessage);
+        }
+    }
+
+    private void fetch(final FrontEndMessage feMessage) {
+        feMessage.execute(portal, fetchSize);
+        feMessage.flush();
+        ++fetches;
+        nextState = TaskState.write();
+    }
+
+    private void sync(final FrontEndMessage feMessage) {
+        feMessage.sync();
+        synced = true;
+        nextState = TaskState.write();
+    }
+
+    private void described(final RowDescription rowDescription) {
+        if(preparing && !statement.isDescribed()) {
+            statement.describe(parameterDescription, rowDescription);
+            resolveTypes(parameterDescription, rowDescription);
+        }
+    }
+
+    private boolean readProcessor(final Response resp) {
+        switch(resp.getBackEnd()) {
+        case DataRow:
+            onDataRow((DataRow) resp);
+            return true;
+        case BindComplete:
+            bound = true;
+            SerializationContext.description(statement.getRowDescription());
+            return true;
+        case PortalSuspended:
+            suspended = true;
+            return false;
+        case CommandComplete:
+            commandComplete = (CommandComplete) resp;
+            return false;
+        case ParseComplete:
+            return true;
+        case CloseComplete:
+            return true;
+        case ParameterDescription:
+            parameterDescription = (ParameterDescription) resp;
+            return true;
+        case RowDescription:
+            described(((RowDescription) resp).toBinary());
+            return true;
+        case NoData:
+            described(RowDescription.EMPTY);
+            return true;
+        case ReadyForQuery:
+            readyForQuery = (ReadyForQuery) resp;
+            return false;
+        default:
+            setError(new UnsupportedOperationException(resp.getBackEnd() + " is not a valid response"));
+            return true;
+        }
+    }
+
+    private void computeNextState(final FrontEndMessage feMessage, final int needs) {
+        if(needs > 0) {
+            nextState = TaskState.needs(needs);
+        }
+        else if(readyForQuery != null) {
+            if(preparing && !statement.isDescribed()) {
+                cache.remove(sql, statement);
+            }
+            else if(typesFailed()) {
+                //its rows can't be read, the next use prepares it again
+                cache.evict(sql, statement);
+            }
+
+            nextState = TaskState.finished();
+        }
+        else if(shouldPause()) {
+            nextState = TaskState.pause();
+        }
+        else if(synced) {
+            nextState = TaskState.read();
+        }
+        else if(commandComplete != null || getError() != null) {
+            sync(feMessage);
+        }
+        else if(suspended) {
+            suspended = false;
+            fetch(feMessage);
+        }
+        else {
+            nextState = TaskState.read();
+        }
+    }
+
+    @Override
+    public void onStart(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        statement = cache.statement(sql);
+        begin(feMessage);
+    }
+
+    @Override
+    public void onWrite(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        if(!started && !synced) {
+            begin(feMessage);
+        }
+        else {
+            nextState = TaskState.read();
+        }
+    }
+
+    @Override
+    public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        if(bound) {
+            SerializationContext.description(statement.getRowDescription());
+        }
+
+        computeNextState(feMessage, pump(readBuffer, this::readProcessor));
+    }
+
+    @Override
+    public void onError(final Notice val) {
+        //keep reading, the Sync still has to go out and be answered
+        setError(val.toException());
+    }
+
+    @Override
+    public void setStatementCache(final StatementCache cache) {
+        this.cache = cache;
+    }
+
+    protected void onDataRow(final DataRow dataRow) {
+        if(getError() != null) {
+            dataRow.finish();
+            return;
+        }
+
+        try {
+            dataRow.with(() -> accumulator = func.apply(accumulator, dataRow));
+        }
+        catch(Throwable t) {
+            setError(t);
+        }
+    }
+
+    @Override
+    public T getResult() {
+        return accumulator;
+    }
+}
@@ -30,6 +30,8 @@ public abstract class SimpleTask<T> extends BaseTask<T> {
     }
     
     protected T accumulator;
+    private boolean written = false;
+    private boolean pending = false;
     
     public SimpleTask(final String sql, final T accumulator) {
         this.sql = sql;
@@ -85,11 +87,41 @@ public abstract class SimpleTask<T> extends BaseTask<T> {
         computeNextState(pump(readBuffer, this::readProcessor));
     }
 
+    //a pipeline may have filled the buffer with other frames, then the query waits
+    //for the next write
     public void onStart(final FrontEndMessage fe, final ByteBuffer readBuffer) {
-        fe.query(getSql());
+        final boolean empty = fe.buffer.position() == 0;
+        written = fe.query(getSql());
+        pending = !written;
+        if(!written && empty) {
+            setError(new IllegalArgumentException("Query does not fit in the write buffer"));
+            nextState = TaskState.finished();
+            return;
+        }
+
         nextState = TaskState.write();
     }
 
+    @Override
+    public void onWrite(final FrontEndMessage fe, final ByteBuffer readBuffer) {
+        if(pending) {
+            onStart(fe, readBuffer);
+        }
+        else {
+            nextState = TaskState.read();
+        }
+    }
+
+    @Override
+    public boolean isSingleFlight() {
+        return true;
+    }
+
+    @Override
+    public boolean isWritten() {
+        return written;
+    }
+
     public static class NoOutput extends SimpleTask<Void> {
 
         private final boolean terminal;
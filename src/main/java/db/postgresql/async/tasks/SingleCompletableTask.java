@@ -33,6 +33,16 @@ public class SingleCompletableTask<T> implements CompletableTask<T> {
     public boolean isExecuted() {
         return task.isExecuted();
     }
+
+    @Override
+    public boolean isSingleFlight() {
+        return task.isSingleFlight();
+    }
+
+    @Override
+    public boolean isWritten() {
+        return task.isWritten();
+    }
     
     public CompletableFuture<T> getFuture() {
         return future;
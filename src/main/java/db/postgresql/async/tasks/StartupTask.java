@@ -8,6 +8,7 @@ import db.postgresql.async.messages.Authentication;
 import db.postgresql.async.messages.BackEnd;
 import db.postgresql.async.messages.FrontEndMessage;
 import db.postgresql.async.messages.KeyData;
+import db.postgresql.async.messages.Notice;
 import db.postgresql.async.messages.ReadyForQuery;
 import db.postgresql.async.messages.Response;
 import java.nio.ByteBuffer;
@@ -66,9 +67,13 @@ public class StartupTask extends BaseTask<KeyData> implements CompletableTask<Ke
         if(needs > 0) {
             nextState = TaskState.needs(needs);
         }
-        else if(authenticated) {
+        else if(future.isDone()) {
             nextState = TaskState.finished();
         }
+        else if(authenticated) {
+            //still waiting on ReadyForQuery
+            nextState = TaskState.read();
+        }
         else {
             nextState = TaskState.write();
         }
@@ -83,6 +88,20 @@ public class StartupTask extends BaseTask<KeyData> implements CompletableTask<Ke
         nextState = TaskState.write();
     }
 
+    @Override
+    public void onError(final Notice val) {
+        //the server hangs up after a startup error
+        setError(val.toException());
+        future.completeExceptionally(getError());
+    }
+
+    @Override
+    public void onFail(final Throwable t) {
+        setError(t);
+        future.completeExceptionally(t);
+        super.onFail(t);
+    }
+
     public KeyData getResult() {
         return keyData;
     }
@@ -0,0 +1,192 @@
+package db.postgresql.async.tasks;
+
+import db.postgresql.async.Flow;
+import db.postgresql.async.IO;
+import db.postgresql.async.Row;
+import db.postgresql.async.TaskState;
+import db.postgresql.async.messages.DataRow;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.messages.Notice;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Hands rows to a subscriber as they come off the wire. When the subscriber's demand
+//runs out the IO channel is paused with no read outstanding, so the server blocks on
+//its socket instead of rows piling up in memory, request(n) wakes it back up. Like the
+//other row callbacks the row is only valid inside onNext. Cancelling sends a
+//CancelRequest for the channel's backend on a side connection and drops the rows
+//already on their way. The task holds on to the channel until the server has taken
+//the cancel, so it can't hit the next query. The result is the number of rows delivered.
+public class StreamTask extends ExecuteTask<Long> implements Flow.Subscription {
+
+    private static final String QUERY_CANCELED = "57014";
+
+    private final Flow.Subscriber<? super Row> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicBoolean cancelSent = new AtomicBoolean();
+    private volatile CompletableFuture<Void> cancelling;
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+    private volatile IO io;
+
+    public StreamTask(final String sql, final List<Object> args, final Flow.Subscriber<? super Row> subscriber) {
+        super(sql, Collections.singletonList(args), 0L, null);
+        this.subscriber = subscriber;
+    }
+
+    private void subscribe() {
+        if(subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(this);
+        }
+    }
+
+    //called for every way the task can end, only the first one is passed on
+    public void signalDone(final Throwable t) {
+        if(!done.compareAndSet(false, true)) {
+            return;
+        }
+
+        io = null;
+        subscribe();
+        final Throwable error = (t != null) ? t : invalidRequest;
+        if(error != null) {
+            subscriber.onError(error);
+        }
+        else {
+            subscriber.onComplete();
+        }
+    }
+
+    private void wake() {
+        final IO current = io;
+        if(current != null) {
+            current.resume();
+        }
+    }
+
+    @Override
+    public void request(final long n) {
+        if(n <= 0L) {
+            invalidRequest = new IllegalArgumentException("Requested rows must be positive, got " + n);
+            cancel();
+            return;
+        }
+
+        demand.accumulateAndGet(n, (current, more) -> (current + more < 0L) ? Long.MAX_VALUE : current + more);
+        wake();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        sendCancel();
+        wake();
+    }
+
+    private void sendCancel() {
+        final IO current = io;
+        if(current != null && !done.get() && cancelSent.compareAndSet(false, true)) {
+            cancelling = current.cancel();
+        }
+    }
+
+    public long getDemand() {
+        return demand.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    protected boolean shouldPause() {
+        return super.shouldPause() || (!cancelled && demand.get() == 0L);
+    }
+
+    @Override
+    protected void onDataRow(final DataRow dataRow) {
+        if(cancelled) {
+            dataRow.finish();
+            return;
+        }
+
+        demand.decrementAndGet();
+        ++accumulator;
+        try {
+            dataRow.with(() -> subscriber.onNext(dataRow));
+        }
+        catch(Throwable t) {
+            setError(t);
+            cancelled = true;
+        }
+    }
+
+    @Override
+    public void onStart(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        io = SerializationContext.io();
+        if(cancelled) {
+            sendCancel();
+        }
+
+        super.onStart(feMessage, readBuffer);
+        subscribe();
+        finishIfDone();
+    }
+
+    @Override
+    public void onRead(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        super.onRead(feMessage, readBuffer);
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        if(nextState.next == TaskState.Next.FINISHED) {
+            final CompletableFuture<Void> pending = cancelling;
+            if(pending != null && !pending.isDone()) {
+                //the cancel must not reach the backend after it has moved on
+                nextState = TaskState.pause();
+                pending.whenComplete((v, t) -> wake());
+                return;
+            }
+
+            if(getError() == null && invalidRequest != null) {
+                setError(invalidRequest);
+            }
+
+            signalDone(getError());
+        }
+    }
+
+    @Override
+    public void onError(final Notice val) {
+        if(cancelled && QUERY_CANCELED.equals(val.getCode())) {
+            return;
+        }
+
+        super.onError(val);
+    }
+
+    @Override
+    public void onFail(final Throwable t) {
+        super.onFail(t);
+        signalDone(t);
+    }
+
+    @Override
+    public void onTimeout(final FrontEndMessage feMessage, final ByteBuffer readBuffer) {
+        super.onTimeout(feMessage, readBuffer);
+        if(getError() == null) {
+            setError(new TimeoutException("Streaming query timed out"));
+        }
+
+        signalDone(getError());
+    }
+}
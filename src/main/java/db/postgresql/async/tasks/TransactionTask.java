@@ -2,13 +2,14 @@ package db.postgresql.async.tasks;
 
 import db.postgresql.async.Task;
 import db.postgresql.async.Concurrency;
+import db.postgresql.async.TaskIterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.function.Function;
 
 public class TransactionTask<T> extends MultiStageTask<T> {
 
-    public TransactionTask(final TransactionIterator<T> iter) {
+    public TransactionTask(final TaskIterator<T> iter) {
         super(iter);
     }
 
@@ -22,12 +23,21 @@ public class TransactionTask<T> extends MultiStageTask<T> {
         private List<Function<T,Task<?>>> stages;
         public Builder<T> then(final Function<T,Task<?>> f) { stages.add(f); return this; }
         public Builder<T> leftShift(final Function<T,Task<?>> f) { return then(f); }
+
+        //write every stage in one flight, only for stages that don't depend on results
+        //put in the accumulator by earlier stages
+        private boolean pipelined = false;
+        public Builder<T> pipelined() { pipelined = true; return this; }
         
         public Builder() {
             this.stages = new ArrayList<>();
         }
 
         public TransactionTask<T> build() {
+            if(pipelined) {
+                return new TransactionTask<>(new PipelinedTransactionIterator<>(concurrency, accumulator, stages));
+            }
+
             final TransactionIterator<T> iter = new TransactionIterator<>(concurrency, accumulator, stages);
             return new TransactionTask<>(iter);
         }
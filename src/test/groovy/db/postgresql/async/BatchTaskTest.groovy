@@ -0,0 +1,165 @@
+package db.postgresql.async;
+
+import spock.lang.*;
+import db.postgresql.async.tasks.*;
+import db.postgresql.async.messages.*;
+import db.postgresql.async.pginfo.*;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import static db.postgresql.async.Task.Prepared.*;
+
+class BatchTaskTest extends Specification {
+
+    @Shared Session session;
+
+    static final String insert = 'insert into batch_items (id, name) values ($1, $2);';
+
+    def setupSpec() {
+        session = Helper.noAuthLoadTypes();
+        session.call(Task.Simple.noOutput('create table if not exists batch_items (id int primary key, name varchar(50));')).get();
+    }
+
+    def cleanupSpec() {
+        session.call(Task.Simple.noOutput('drop table batch_items;')).get();
+        session.shutdown();
+    }
+
+    def cleanup() {
+        session.call(Task.Simple.noOutput('truncate batch_items;')).get();
+    }
+
+    private long items() {
+        return session.call(applyRows('select count(*) from batch_items;', { Row r -> r.single(); })).get()[0];
+    }
+
+    def "Large Batch In Chunks"() {
+        setup:
+        def args = (1..50_000).collect { i -> [ i, "item ${i}".toString() ] };
+        def task = batch(insert, args);
+        int[] counts = session.call(task).get();
+
+        expect:
+        counts.length == 50_000;
+        counts.every { it == 1 };
+        task.chunks > 1;
+        items() == 50_000;
+    }
+
+    def "Counts Per Statement"() {
+        setup:
+        session.call(batch(insert, (1..10).collect { i -> [ i, 'x' ] })).get();
+        int[] counts = session.call(batch('delete from batch_items where id <= $1;', [ [3], [3], [7] ])).get();
+
+        expect:
+        counts as List == [3, 0, 4];
+        items() == 3;
+    }
+
+    def "Failure Rolls Back The Whole Batch"() {
+        setup:
+        def args = (1..5_000).collect { i -> [ i, 'x' ] } + [ [ 10, 'duplicate' ] ];
+
+        when:
+        session.call(batch(insert, args)).get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof PostgresqlException;
+        items() == 0;
+        session.call(batch(insert, [ [1, 'one'], [2, 'two'] ])).get() as List == [1, 1];
+    }
+
+    def "Empty Batch"() {
+        expect:
+        session.call(batch(insert, [])).get().length == 0;
+    }
+
+    def "Rows Near The Buffer Size"() {
+        setup:
+        Session small = Helper.basic().with {
+            user 'noauth'
+            bufferSize 4096
+            toSession()
+        };
+        small.sessionInfo.registry.loadTypes(small);
+        small.call(Task.Simple.noOutput('create table batch_wide (id int primary key, name text);')).get();
+        String wide = 'insert into batch_wide (id, name) values ($1, $2);';
+        String padded = 'insert into batch_wide (id, name) values ($1, $2) /* ' + ('p' * 4000) + ' */;';
+        def run = { String sql, List args ->
+            try { small.call(batch(sql, args)).get() as List; }
+            catch(ExecutionException e) { e.cause.message; } };
+        def afterParse = run(padded, (1..20).collect { i -> [ i, 'x' ] });
+        def singles = (3980..4090).collect { n -> run(wide, [ [ 1000 + n, 'y' * n ] ]); };
+        def pairs = (1980..2060).collect { n -> run(wide, [ [ 10_000 + n, 'a' * n ], [ 20_000 + n, 'b' * n ] ]); };
+        long rows = small.call(applyRows('select count(*) from batch_wide;', { Row r -> r.single(); })).get()[0];
+
+        expect:
+        afterParse == [1] * 20;
+        singles.every { r -> r == [1] || r == 'Arguments do not fit in the write buffer' };
+        singles.count { r -> r == [1] } > 0;
+        singles.count { r -> r instanceof String } > 0;
+        singles.indexOf('Arguments do not fit in the write buffer') == singles.count { r -> r == [1] };
+        pairs.every { r -> r == [1, 1] };
+        rows == 20 + singles.count { r -> r == [1] } + 2 * pairs.size();
+
+        cleanup:
+        small.call(Task.Simple.noOutput('drop table batch_wide;')).get();
+        small.shutdown();
+    }
+
+    def "Chunks Only Give Back Their Own Rows"() {
+        setup:
+        SerializationContext.registry(session.sessionInfo.registry);
+        Statement statement = new Statement('_batch', null, RowDescription.EMPTY);
+        StatementCache cache = new StatementCache();
+        cache.store(insert, statement);
+        def message = { int size -> FrontEndMessage fe = new FrontEndMessage(null); fe.buffer = ByteBuffer.allocate(size); fe; };
+        FrontEndMessage measure = message(8192);
+        measure.bindExecute(Portal.unnamed(statement), [ 1, 'x' ], Format.BINARY);
+        int rowSize = measure.buffer.position();
+        def start = { FrontEndMessage fe ->
+            BatchTask task = new BatchTask(insert, [ [ 1, 'x' ] ]);
+            task.setStatementCache(cache);
+            task.onStart(fe, null);
+            task; };
+
+        when: 'the row fits but its Sync does not'
+        FrontEndMessage fe = message(rowSize + 2);
+        BatchTask task = start(fe);
+
+        then:
+        task.error == null;
+        task.nextState.next == TaskState.Next.WRITE;
+        fe.buffer.position() == rowSize;
+        task.chunks == 1;
+
+        when:
+        fe.buffer.clear();
+        task.onWrite(fe, null);
+
+        then:
+        task.nextState.next == TaskState.Next.WRITE;
+        fe.buffer.position() == 5;
+
+        when: 'other frames leave no room for the row or a Flush'
+        fe = message(rowSize + 10);
+        fe.buffer.position(rowSize + 7);
+        task = start(fe);
+
+        then:
+        task.error == null;
+        task.nextState.next == TaskState.Next.WRITE;
+        fe.buffer.position() == rowSize + 7;
+        task.chunks == 0;
+
+        when:
+        fe.buffer.clear();
+        task.onWrite(fe, null);
+
+        then:
+        task.error == null;
+        fe.buffer.position() == rowSize + 5;
+        task.chunks == 1;
+    }
+}
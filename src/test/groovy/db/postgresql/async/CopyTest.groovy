@@ -5,6 +5,11 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.Rule;
 import static db.postgresql.async.Task.Copy.*;
 import static db.postgresql.async.Task.Simple.*;
+import db.postgresql.async.tasks.CopyToServerTask;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutionException;
 
 class CopyTest extends Specification {
 
@@ -43,4 +48,195 @@ class CopyTest extends Specification {
         total2 > 0;
         size2 == 20;
     }
+
+    def "Binary Copy Of Typed Rows"() {
+        setup:
+        session(noOutput('create table copy_binary (id int4, big int8, name text, flag bool, born date, ratio float8);')).get();
+        def rows = (1..20_000).collect { i ->
+            [ i, i * 1_000_000_000L, "name ${i}".toString(), (i % 2 == 0), LocalDate.of(2000, 1, 1).plusDays(i),
+              (i % 10 == 0) ? null : i / 4.0d ] };
+
+        when:
+        long total = session(toServer('copy copy_binary from stdin with (format binary);', rows)).get();
+        def back = session(applyRows('select count(*), sum(id), sum(big), count(ratio), max(born) from copy_binary;',
+                                     { r -> r.toList()*.toString() })).get()[0];
+
+        then:
+        total == 20_000;
+        back == [ '20000', '200010000', '200010000000000000', '18000', '2054-10-04' ];
+
+        cleanup:
+        session(noOutput('drop table copy_binary;')).get();
+    }
+
+    def "Binary Copy Failures"() {
+        setup:
+        session(noOutput('create table copy_binary (id int4, name text);')).get();
+
+        when:
+        session(toServer('copy copy_binary from stdin with (format binary);', [ [1, 'one'], [2, new Object()] ])).get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof IllegalArgumentException;
+
+        when:
+        session(toServer('copy copy_binary from stdin with (format binary);', [ [1L, 'long for int'] ])).get();
+
+        then:
+        e = thrown();
+        e.cause instanceof PostgresqlException;
+        session.call(applyRows('select count(*) from copy_binary;', { r -> r.iterator().nextInt(); })).get()[0] == 0;
+
+        cleanup:
+        session(noOutput('drop table copy_binary;')).get();
+    }
+
+    def "Binary Copy Out As Rows"() {
+        setup:
+        def sql = "copy (select i, i::int8 * 1000, 'n' || i, i % 2 = 0, array[i, i + 1], " +
+            "case when i % 10 = 0 then null else i / 4.0::float8 end from generate_series(1, 10000) i) to stdout with (format binary);";
+        def columns = [ id: Integer, big: Long, name: String, even: Boolean, pair: int[], ratio: Double ];
+        def task = fromServer(sql, columns, [], { List list, Row r ->
+            def e = r.extractor();
+            list << [ e.intAt('id'), e.longAt(1), e.stringAt('name'), e.booleanAt('even'),
+                      e.arrayAt('pair', int) as List, e.getAt('ratio') ];
+            list; });
+        def rows = session(task).get();
+
+        expect:
+        rows.size() == 10_000;
+        task.rows == 10_000;
+        rows[0] == [ 1, 1000L, 'n1', false, [1, 2], 0.25d ];
+        rows[9] == [ 10, 10_000L, 'n10', true, [10, 11], null ];
+        rows*.get(0) == (1..10_000).toList();
+    }
+
+    def "Binary Copy Out Map And Errors"() {
+        when:
+        def names = [];
+        session(fromServer('copy (select * from numerals order by arabic) to stdout with (format binary);',
+                           [ id: Integer, arabic: Integer, roman: String ], { Row r -> names << r.toMap().roman; })).get();
+
+        then:
+        names.size() == 20;
+        names[0] == 'i';
+
+        when:
+        session(fromServer('copy (select 1) to stdout;', [ one: Integer ], { Row r -> })).get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof IllegalStateException;
+        session.call(applyRows('select 1;', { r -> r.iterator().nextInt(); })).get() == [1];
+
+        when:
+        fromServer('copy (select 1, 2) to stdout with (format binary);',
+                   new HashMap([ one: Integer, two: Integer ]), { Row r -> });
+
+        then:
+        thrown(IllegalArgumentException);
+    }
+
+    def "Large File Round Trip"() {
+        setup:
+        File file = folder.newFile("series.txt");
+        session(noOutput('create table copy_series (id int4, name text);')).get();
+
+        when:
+        long out = session(fromServer("copy (select i, repeat('x', i % 100) from generate_series(1, 200000) i) to stdout;", file)).get();
+
+        then:
+        out == file.length();
+
+        when:
+        long back = session(toServer('copy copy_series from stdin;', file)).get();
+        def summary = session.call(applyRows('select count(*), sum(id), sum(length(name)) from copy_series;',
+                                             { r -> r.toList()*.toString() })).get()[0];
+
+        then:
+        back == file.length();
+        summary == [ '200000', '20000100000', '9900000' ];
+
+        cleanup:
+        session(noOutput('drop table copy_series;')).get();
+    }
+
+    def "Mapped Copies Close Their File"() {
+        setup:
+        File file = folder.newFile("mapped.txt");
+        file.text = (1..100).collect { i -> "${i}\n" }.join('');
+        session(noOutput('create table copy_mapped (id int4);')).get();
+        FileChannel good = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        FileChannel bad = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        when:
+        long sent = session(new CopyToServerTask.Mapped('copy copy_mapped from stdin;', good)).get();
+
+        then:
+        sent == file.length();
+        !good.isOpen();
+
+        when:
+        session(new CopyToServerTask.Mapped('copy no_such_table from stdin;', bad)).get();
+
+        then:
+        thrown(ExecutionException);
+        !bad.isOpen();
+
+        cleanup:
+        session(noOutput('drop table copy_mapped;')).get();
+    }
+
+    def "Parallel Copy Of Text And Binary"() {
+        setup:
+        File text = folder.newFile("parallel.txt");
+        File binary = folder.newFile("parallel.bin");
+        String series = "select i, repeat('x', i % 100) from generate_series(1, 50000) i";
+        session(noOutput('create table copy_parallel (id int4, name text);')).get();
+        session(fromServer("copy (${series}) to stdout;".toString(), text)).get();
+        session(fromServer("copy (${series}) to stdout with (format binary);".toString(), binary)).get();
+
+        when:
+        ParallelCopy fromText = session.copyParallel('copy copy_parallel from stdin;', text, 4).get();
+        ParallelCopy fromBinary = session.copyParallel('copy copy_parallel from stdin with (format binary);', binary, 4).get();
+        def summary = session.call(applyRows('select count(*), sum(id), sum(length(name)) from copy_parallel;',
+                                             { r -> r.toList()*.toString() })).get()[0];
+
+        then:
+        !fromText.binary;
+        fromText.chunks.size() == 4;
+        fromText.success;
+        fromText.rows == 50_000;
+        fromBinary.binary;
+        fromBinary.chunks.size() == 4;
+        fromBinary.success;
+        fromBinary.rows == 50_000;
+        summary == [ '100000', '2500050000', '4950000' ];
+
+        cleanup:
+        session(noOutput('drop table copy_parallel;')).get();
+    }
+
+    def "Parallel Copy Reports Failed Chunks"() {
+        setup:
+        File file = folder.newFile("parallel_bad.txt");
+        file.text = (1..1000).collect { i -> (i == 900) ? 'oops\n' : "${i}\n" }.join('');
+        session(noOutput('create table copy_parallel_bad (id int4);')).get();
+
+        when:
+        ParallelCopy copy = session.copyParallel('copy copy_parallel_bad from stdin;', file, 4).get();
+        long count = session.call(applyRows('select count(*) from copy_parallel_bad;', { r -> r.single() as long; })).get()[0];
+
+        then:
+        copy.failures.size() == 1;
+        copy.failures[0].index == 3;
+        copy.failures[0].error instanceof PostgresqlException;
+        copy.rows == count;
+        count > 0;
+        count < 1000;
+
+        cleanup:
+        session(noOutput('drop table copy_parallel_bad;')).get();
+    }
 }
@@ -49,5 +49,60 @@ class ExecuteTaskTest extends Specification {
                   //println("Execution ${num}");
                   assert(session.execute(ct).get()); }; };
     }
-}
 
+    def "Test Bulk Count"() {
+        setup:
+        String sql = 'update items set description = description where id = $1;';
+        List<Integer> counts = session.call(bulkCount(sql, [[1], [2], [3]])).get();
+        List<Integer> again = session.call(bulkCount(sql, [[2], [1]])).get();
+
+        expect:
+        counts == [1, 1, 0];
+        again == [1, 1];
+    }
+
+    def "Test Failed Prepare Is Not Cached"() {
+        setup:
+        String sql = 'select * from no_such_table where id = $1;';
+        def attempt = {
+            try { session.call(applyRows(sql, [1], { Row r -> r.toMap(); })).get(); return null; }
+            catch(java.util.concurrent.ExecutionException e) { return e.cause; } };
+
+        expect:
+        attempt() instanceof PostgresqlException;
+        attempt() instanceof PostgresqlException;
+        session.call(applyRows('select * from items where id = $1;', [1], { Row r -> r.toMap(); })).get()[0].description == 'one';
+    }
+
+    def "Test Statements Larger Than The Buffer"() {
+        setup:
+        Session small = Helper.basic().with {
+            user 'noauth'
+            bufferSize 4096
+            toSession()
+        };
+        small.sessionInfo.registry.loadTypes(small);
+        def attempt = { String sql, List args ->
+            try { small.call(applyRows(sql, args, { Row r -> r.single(); })).get(); return null; }
+            catch(java.util.concurrent.ExecutionException e) { return e.cause.message; } };
+        String tooLong = 'select $1::int4 /* ' + ('x' * 5000) + ' */;';
+        String barelyFits = 'select $1::int4 /* ' + ('y' * 4040) + ' */;';
+        String big = 'z' * 5000;
+        def edges = (4050..4090).collect { n ->
+            String sql = 'select $1::int4 /* ' + ('w' * n) + ' */;';
+            try { small.call(applyRows(sql, [n], { Row r -> r.single(); })).get(); }
+            catch(java.util.concurrent.ExecutionException e) { e.cause.message; } };
+
+        expect:
+        attempt(tooLong, [1]) == 'Statement does not fit in the write buffer';
+        small.call(applyRows(barelyFits, [2], { Row r -> r.single(); })).get() == [2];
+        small.call(applyRows(barelyFits, [3], { Row r -> r.single(); })).get() == [3];
+        edges.every { e -> e instanceof List || e == 'Statement does not fit in the write buffer' };
+        edges.findAll { e -> e instanceof List }.size() > 0;
+        attempt('select length($1::text);', [big]) == 'Arguments do not fit in the write buffer';
+        small.call(applyRows('select length($1::text);', ['abc'], { Row r -> r.single(); })).get() == [3];
+
+        cleanup:
+        small.shutdown();
+    }
+}
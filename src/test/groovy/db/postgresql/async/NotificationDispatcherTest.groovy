@@ -0,0 +1,221 @@
+package db.postgresql.async;
+
+import spock.lang.*;
+import db.postgresql.async.messages.Notification;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static db.postgresql.async.NotificationDispatcher.Overflow.*;
+import static db.postgresql.async.Task.Simple.*;
+
+class NotificationDispatcherTest extends Specification {
+
+    static Notification notification(String channel, String payload) {
+        byte[] c = channel.getBytes('US-ASCII');
+        byte[] p = payload.getBytes('US-ASCII');
+        ByteBuffer buffer = ByteBuffer.allocate(11 + c.length + p.length);
+        buffer.put((byte) 'A').putInt(buffer.capacity() - 1).putInt(1);
+        buffer.put(c).put((byte) 0).put(p).put((byte) 0).flip();
+        return new Notification(buffer);
+    }
+
+    //first notification is taken off the queue and held until the latch opens
+    static class Holding {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Queue<String> seen = new ConcurrentLinkedQueue<>();
+
+        void accept(Notification n) {
+            seen << n.payload;
+            started.countDown();
+            release.await();
+        }
+    }
+
+    def "Ordered Per Channel"() {
+        setup:
+        def dispatcher = new NotificationDispatcher(4, 10_000, BLOCK, Executors.defaultThreadFactory());
+        def one = new ConcurrentLinkedQueue<Integer>();
+        def two = new ConcurrentLinkedQueue<Integer>();
+        (1..5_000).each { i ->
+            dispatcher.dispatch(notification('one', "${i}"), { n -> one << n.payload.toInteger(); });
+            dispatcher.dispatch(notification('two', "${i}"), { n -> two << n.payload.toInteger(); });
+        }
+
+        while(dispatcher.delivered < 10_000) { Thread.sleep(10); }
+
+        expect:
+        one.toList() == (1..5_000).toList();
+        two.toList() == (1..5_000).toList();
+        dispatcher.dispatched == 10_000;
+        dispatcher.depth == 0;
+
+        cleanup:
+        dispatcher.shutdown();
+    }
+
+    def "Slow Channel Does Not Hold Up Others"() {
+        setup:
+        def dispatcher = new NotificationDispatcher(2, 10, BLOCK, Executors.defaultThreadFactory());
+        def slow = 'slow';
+        def fast = (0..100).collect { "fast${it}".toString() }.find { ((it.hashCode() & Integer.MAX_VALUE) % 2) != ((slow.hashCode() & Integer.MAX_VALUE) % 2) };
+        def holding = new Holding();
+        def done = new CountDownLatch(1);
+        dispatcher.dispatch(notification(slow, 'x'), holding.&accept);
+        holding.started.await();
+        dispatcher.dispatch(notification(fast, 'y'), { n -> done.countDown(); });
+
+        expect:
+        done.await(1, TimeUnit.SECONDS);
+
+        cleanup:
+        holding.release.countDown();
+        dispatcher.shutdown();
+    }
+
+    def "Drop Oldest"() {
+        setup:
+        def dispatcher = new NotificationDispatcher(1, 3, DROP_OLDEST, Executors.defaultThreadFactory());
+        def holding = new Holding();
+        dispatcher.dispatch(notification('c', '0'), holding.&accept);
+        holding.started.await();
+        (1..10).each { dispatcher.dispatch(notification('c', "${it}"), holding.&accept); }
+
+        expect:
+        dispatcher.getDepth('c') == 3;
+        dispatcher.dropped == 7;
+
+        when:
+        holding.release.countDown();
+        while(dispatcher.delivered < 4) { Thread.sleep(10); }
+
+        then:
+        holding.seen.toList() == ['0', '8', '9', '10'];
+
+        cleanup:
+        dispatcher.shutdown();
+    }
+
+    def "Coalesce By Payload"() {
+        setup:
+        def dispatcher = new NotificationDispatcher(1, 3, COALESCE, Executors.defaultThreadFactory());
+        def holding = new Holding();
+        dispatcher.dispatch(notification('c', 'first'), holding.&accept);
+        holding.started.await();
+        ['a', 'b', 'a', 'a', 'b', 'c', 'd'].each { dispatcher.dispatch(notification('c', it), holding.&accept); }
+
+        expect:
+        dispatcher.coalesced == 3;
+        dispatcher.dropped == 1;
+
+        when:
+        holding.release.countDown();
+        while(dispatcher.delivered < 4) { Thread.sleep(10); }
+
+        then:
+        holding.seen.toList() == ['first', 'b', 'c', 'd'];
+
+        cleanup:
+        dispatcher.shutdown();
+    }
+
+    def "Block Waits For Room"() {
+        setup:
+        def dispatcher = new NotificationDispatcher(1, 2, BLOCK, Executors.defaultThreadFactory());
+        def holding = new Holding();
+        dispatcher.dispatch(notification('c', '0'), holding.&accept);
+        holding.started.await();
+        def producer = Thread.start { (1..5).each { dispatcher.dispatch(notification('c', "${it}"), holding.&accept); } };
+
+        when:
+        Thread.sleep(200);
+
+        then:
+        producer.alive;
+        dispatcher.getDepth('c') == 2;
+        dispatcher.dropped == 0;
+
+        when:
+        holding.release.countDown();
+        producer.join(1_000);
+        while(dispatcher.delivered < 6) { Thread.sleep(10); }
+
+        then:
+        !producer.alive;
+        holding.seen.toList() == ['0', '1', '2', '3', '4', '5'];
+
+        cleanup:
+        dispatcher.shutdown();
+    }
+
+    def "Offer Refuses A Full Blocking Queue"() {
+        setup:
+        def dispatcher = new NotificationDispatcher(1, 1, BLOCK, Executors.defaultThreadFactory());
+        def holding = new Holding();
+        def room = new CountDownLatch(1);
+        dispatcher.dispatch(notification('c', '0'), holding.&accept);
+        holding.started.await();
+
+        expect:
+        dispatcher.offer(notification('c', '1'), holding.&accept, { -> room.countDown(); });
+        !dispatcher.offer(notification('c', '2'), holding.&accept, { -> room.countDown(); });
+        dispatcher.getDepth('c') == 1;
+        room.count == 1;
+
+        when:
+        holding.release.countDown();
+
+        then:
+        room.await(1, TimeUnit.SECONDS);
+        dispatcher.offer(notification('c', '2'), holding.&accept, { -> });
+
+        cleanup:
+        dispatcher.shutdown();
+    }
+
+    def "Blocked Consumers Can Call Back Into The Session"() {
+        setup:
+        Session session = Helper.basic().with {
+            user 'noauth'
+            notifications true
+            notificationDispatch 1, 1, BLOCK
+            toSession()
+        };
+
+        def seen = new ConcurrentLinkedQueue<String>();
+        session.listen('callback', { n -> session.execute(noOutput("notify other, 'x';")).get(); seen << n.payload; }).get();
+        session.execute(noOutput((1..10).collect { "notify callback, '${it}'" }.join('; ') + ';')).get();
+        def deadline = System.currentTimeMillis() + 5_000;
+        while(seen.size() < 10 && System.currentTimeMillis() < deadline) { Thread.sleep(10); }
+
+        expect:
+        seen.toList() == (1..10).collect { it.toString() };
+
+        cleanup:
+        session.shutdown();
+    }
+
+    def "Session Consumers Run Off The IO Thread"() {
+        setup:
+        Session session = Helper.basic().with {
+            user 'noauth'
+            notifications true
+            notificationDispatch 2, 100, BLOCK
+            toSession()
+        };
+
+        def threads = new ConcurrentLinkedQueue<String>();
+        session.listen('dispatched', { n -> threads << Thread.currentThread().name; }).get();
+        (1..5).each { session.execute(noOutput("notify dispatched, '${it}'")).get(); }
+        while(session.notificationDispatcher.delivered < 5) { Thread.sleep(10); }
+
+        expect:
+        threads.size() == 5;
+        threads.every { it.startsWith('Session-Notifications') };
+
+        cleanup:
+        session.shutdown();
+    }
+}
@@ -3,6 +3,9 @@ package db.postgresql.async;
 import spock.lang.*;
 import static db.postgresql.async.Task.Simple.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 class NotificationsTest extends Specification {
 
@@ -63,4 +66,37 @@ class NotificationsTest extends Specification {
         two.get() == 100;
         three.get() == 150;
     }
+
+    def "Delivered Without Waiting For A Poll"() {
+        setup:
+        def received = new CompletableFuture<Long>();
+        session.listen('prompt', { n -> received.complete(System.nanoTime()); }).get();
+        session.execute(noOutput("notify warmup")).get();
+        long sent = System.nanoTime();
+        session.execute(noOutput("notify prompt, 'now'")).get();
+        long latency = TimeUnit.NANOSECONDS.toMillis(received.get(1, TimeUnit.SECONDS) - sent);
+
+        expect:
+        latency < 100L;
+
+        cleanup:
+        session.unlisten('prompt').get();
+    }
+
+    def "Bad Listen Fails Its Future Only"() {
+        when:
+        session.listen('"bad', { n -> }).get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof PostgresqlException;
+
+        when:
+        def received = new CompletableFuture<String>();
+        session.listen('good', { n -> received.complete(n.payload); }).get();
+        session.execute(noOutput("notify good, 'ok'")).get();
+
+        then:
+        received.get(1, TimeUnit.SECONDS) == 'ok';
+    }
 }
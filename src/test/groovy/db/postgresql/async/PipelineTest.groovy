@@ -0,0 +1,122 @@
+package db.postgresql.async;
+
+import spock.lang.*;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.pginfo.StatementCache;
+import db.postgresql.async.tasks.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class PipelineTest extends Specification {
+
+    @Shared Session session;
+
+    def setupSpec() {
+        session = Helper.noAuthLoadTypes();
+    }
+
+    def cleanupSpec() {
+        session.shutdown();
+    }
+
+    def "Mixed Tasks"() {
+        setup:
+        def tasks = [ Task.Simple.applyRows('select * from items where id < 3 order by id;', { Row r -> r.toMap(); }),
+                      Task.Prepared.applyRows('select * from items where id = $1;', [2], { Row r -> r.toMap(); }),
+                      Task.Prepared.applyRows('select * from items where id = $1;', [1], { Row r -> r.toMap(); }),
+                      Task.Simple.count('update items set description = description where id = 1;') ];
+        def results = session.pipeline(tasks).get();
+
+        expect:
+        results.size() == 4;
+        results[0]*.description == ['one', 'two'];
+        results[1][0].description == 'two';
+        results[2][0].description == 'one';
+        results[3] == 1;
+    }
+
+    def "Many Point Lookups"() {
+        setup:
+        def sql = 'select description from items where id = $1;';
+        def tasks = (0..<200).collect { i -> Task.Prepared.applyRows(sql, [(i % 2) + 1], { Row r -> r.single(); }); };
+        def results = session.pipeline(tasks).get();
+
+        expect:
+        results.size() == 200;
+        results.every { it.size() == 1; };
+        (0..<200).every { i -> results[i][0] == ((i % 2) == 0 ? 'one' : 'two'); };
+    }
+
+    def "Failure Does Not Affect Neighbors"() {
+        setup:
+        def pipeline = Task.pipeline([ Task.Simple.count('update items set description = description;'),
+                                       Task.Simple.count('select * from no_such_table;'),
+                                       Task.Prepared.count('update items set description = description where id = $1;', [1]) ]);
+
+        when:
+        session.execute(pipeline).get();
+
+        then:
+        thrown(ExecutionException);
+        pipeline.tasks[0].future.get() == 2;
+        pipeline.tasks[1].future.isCompletedExceptionally();
+        pipeline.tasks[2].future.get() == 1;
+        session.call(Task.Simple.applyRows('select * from items;', { Row r -> r.toMap(); })).get().size() == 2;
+    }
+
+    def "Timed Out Pipelines Do Not Return Their Channel"() {
+        setup:
+        def sleep = new SimpleTask.NoOutput('select pg_sleep(1);', false) {
+            long getTimeout() { 100L; }
+            TimeUnit getUnits() { TimeUnit.MILLISECONDS; } };
+        def pipeline = Task.pipeline([ sleep, Task.Simple.applyRows('select 1;', { Row r -> r.single(); }) ]);
+
+        when:
+        session.execute(pipeline).get();
+
+        then:
+        thrown(ExecutionException);
+        pipeline.tasks[1].future.isCompletedExceptionally();
+        session.call(Task.Simple.applyRows('select 42;', { Row r -> r.single(); })).get()[0].toString() == '42';
+    }
+
+    def "Frames Are Written Back To Back"() {
+        setup:
+        def sqls = (1..10).collect { i -> "select ${i};".toString() };
+        int frame = 1 + 4 + 'select 1;'.length() + 1;
+        def start = { int size ->
+            PipelineTask pipeline = new PipelineTask(sqls.collect { sql -> Task.Simple.count(sql) });
+            pipeline.setStatementCache(new StatementCache());
+            pipeline.setOobHandlers([:]);
+            FrontEndMessage fe = new FrontEndMessage(null);
+            fe.buffer = ByteBuffer.allocate(size);
+            pipeline.onStart(fe, ByteBuffer.allocate(0));
+            [ pipeline, fe ]; };
+
+        when:
+        def (all, allFe) = start(8192);
+
+        then:
+        all.nextState.next == TaskState.Next.WRITE;
+        allFe.buffer.position() == 9 * frame + (frame + 1);
+        all.tasks.every { t -> t.nextState.next == TaskState.Next.READ };
+
+        when:
+        def (some, someFe) = start(4 * frame + 3);
+
+        then:
+        some.nextState.next == TaskState.Next.WRITE;
+        someFe.buffer.position() == 4 * frame;
+        some.tasks[0..3].every { t -> t.nextState.next == TaskState.Next.READ };
+
+        when:
+        someFe.buffer.clear();
+        some.onWrite(someFe, ByteBuffer.allocate(0));
+
+        then:
+        some.nextState.next == TaskState.Next.WRITE;
+        someFe.buffer.position() == 4 * frame;
+        some.tasks[4..7].every { t -> t.nextState.next == TaskState.Next.READ };
+    }
+}
@@ -0,0 +1,76 @@
+package db.postgresql.async;
+
+import spock.lang.*;
+import db.postgresql.async.tasks.*;
+import java.util.concurrent.ExecutionException;
+import static db.postgresql.async.Task.Prepared.*;
+
+class PortalTaskTest extends Specification {
+
+    @Shared Session session;
+
+    static final String series = 'select i from generate_series(1, $1) i;';
+
+    def setupSpec() {
+        session = Helper.noAuthLoadTypes();
+    }
+
+    def cleanupSpec() {
+        session.shutdown();
+    }
+
+    def "Fetch In Chunks"() {
+        setup:
+        def task = fetch(series, [ 10_500 ], 1_000, [], { List list, Row r -> list << r.single(); list; });
+        def rows = session.call(task).get();
+
+        expect:
+        rows == (1..10_500).toList();
+        task.fetches == 11;
+    }
+
+    def "Exact Multiple Of Fetch Size"() {
+        setup:
+        def task = fetch(series, [ 300 ], 100, 0, { Integer sum, Row r -> sum + r.single(); });
+
+        expect:
+        session.call(task).get() == (1..300).sum();
+        //the last fetch comes back empty with CommandComplete
+        task.fetches == 4;
+    }
+
+    def "No Rows"() {
+        setup:
+        int count = 0;
+        def task = fetch('update items set description = description where id = $1;', [ 1 ], 10, { Row r -> ++count; });
+        session.call(task).get();
+
+        expect:
+        count == 0;
+        task.commandStatus.rows == 1;
+    }
+
+    def "Errors Are Synced"() {
+        when:
+        session.call(fetch('select 1/(i - 500) from generate_series(1, $1) i;', [ 1_000 ], 100, { Row r -> r.single(); })).get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof PostgresqlException;
+        session.call(fetch(series, [ 3 ], 2, [], { List list, Row r -> list << r.single(); list; })).get() == [1, 2, 3];
+    }
+
+    def "Processor Failure Stops Fetching"() {
+        setup:
+        def task = fetch(series, [ 10_000 ], 100, { Row r -> throw new IllegalStateException('stop'); });
+
+        when:
+        session.call(task).get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof IllegalStateException;
+        task.fetches == 1;
+        session.call(applyRows(series, [ 2 ], { Row r -> r.single(); })).get() == [1, 2];
+    }
+}
@@ -0,0 +1,154 @@
+package db.postgresql.async;
+
+import spock.lang.*;
+import db.postgresql.async.messages.FrontEndMessage;
+import db.postgresql.async.tasks.SimpleTask;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+class SessionPoolTest extends Specification {
+
+    def "Oversubscribed Throughput"() {
+        setup:
+        Session session = Helper.noAuthLoadTypes();
+        int maxChannels = session.sessionInfo.maxChannels;
+        int inFlight = maxChannels * 10;
+        int total = 5_000;
+        Semaphore permits = new Semaphore(inFlight);
+        List<CompletableFuture> futures = new ArrayList<>(total);
+
+        when:
+        long start = System.nanoTime();
+        total.times { i ->
+            permits.acquire();
+            def f = session(Task.Prepared.applyRows('select description from items where id = $1;', [(i % 2) + 1],
+                                                    { Row r -> r.single(); }));
+            f.whenComplete { v, t -> permits.release(); };
+            futures << f; };
+        CompletableFuture.allOf(futures as CompletableFuture[]).get();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+        println("${total} tasks, ${inFlight} in flight on ${session.ioCount} channels: " +
+                "${String.format('%.0f', total / seconds)} tasks/sec");
+
+        then:
+        futures.every { it.get().size() == 1; };
+        session.pendingCount == 0;
+        session.rejectedCount == 0;
+
+        cleanup:
+        session.shutdown();
+    }
+
+    def "Rejects Past Max Pending"() {
+        setup:
+        Session session = new SessionInfo.Builder().with {
+            host Helper.host
+            port Helper.port
+            database Helper.database
+            user 'noauth'
+            maxPending 2
+            toSession()
+        };
+        session.sessionInfo.registry.loadTypes(session);
+
+        when:
+        def futures = (0..<10).collect { session(Task.Simple.applyRows('select pg_sleep(0.2);', { Row r -> r.single(); })); };
+        def outcomes = futures.collect { f ->
+            try { f.get(); return 'ok'; }
+            catch(ExecutionException e) { return e.cause.class; } };
+
+        then:
+        outcomes.count('ok') >= 3;
+        outcomes.count(RejectedExecutionException) == session.rejectedCount;
+        session.rejectedCount > 0;
+        session.pendingCount == 0;
+        session(Task.Simple.applyRows('select 1;', { Row r -> r.single(); })).get() == ['1'];
+
+        cleanup:
+        session.shutdown();
+    }
+
+    def "Pending Tasks Failing At Start Don't Recurse"() {
+        setup:
+        int count = 100_000;
+        Session session = new SessionInfo.Builder().with {
+            host Helper.host
+            port Helper.port
+            database Helper.database
+            user 'noauth'
+            maxPending count
+            toSession()
+        };
+        session.sessionInfo.registry.loadTypes(session);
+        def busy = (1..session.ioCount).collect {
+            session(Task.Simple.applyRows('select pg_sleep(0.5);', { Row r -> r.single(); })); };
+        def futures = (1..count).collect {
+            session(new SimpleTask.NoOutput('select 1;', false) {
+                    void onStart(FrontEndMessage fe, ByteBuffer readBuffer) {
+                        setError(new IllegalStateException('fails at start'));
+                        nextState = TaskState.finished();
+                    } }); };
+
+        when:
+        busy*.get();
+        def causes = futures.collect { f ->
+            try { f.get(30, TimeUnit.SECONDS); return null; }
+            catch(ExecutionException e) { return e.cause.class; } };
+
+        then:
+        causes.every { it == IllegalStateException };
+        session.pendingCount == 0;
+        session(Task.Simple.applyRows('select 1;', { Row r -> r.single(); })).get() == ['1'];
+
+        cleanup:
+        session.shutdown();
+    }
+
+    def "Open Warms Up Channels In Parallel"() {
+        setup:
+        SessionInfo info = new SessionInfo.Builder().with {
+            host Helper.host
+            port Helper.port
+            database Helper.database
+            user 'noauth'
+            channels 12, 16
+            startupConcurrency 4
+            build()
+        };
+
+        when:
+        Session session = Session.open(info).get();
+
+        then:
+        session.ioCount == 12;
+        session.ready().isDone();
+        session.call(Task.Simple.applyRows('select 1;', { Row r -> r.single(); })).get() == [ '1' ];
+
+        cleanup:
+        session?.shutdown();
+    }
+
+    def "Open Fails On Bad Password"() {
+        setup:
+        SessionInfo info = new SessionInfo.Builder().with {
+            host Helper.host
+            port Helper.port
+            database Helper.database
+            user 'md5auth'
+            password 'wrong'
+            build()
+        };
+        CompletableFuture<Session> future = Session.open(info);
+
+        when:
+        future.get();
+
+        then:
+        ExecutionException e = thrown();
+        e.cause instanceof PostgresqlException;
+    }
+}
@@ -0,0 +1,149 @@
+package db.postgresql.async;
+
+import spock.lang.*;
+import db.postgresql.async.tasks.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+class StreamTest extends Specification {
+
+    @Shared Session session;
+
+    static final String series = 'select i from generate_series(1, $1) i;';
+
+    def setupSpec() {
+        session = Helper.noAuthLoadTypes();
+    }
+
+    def cleanupSpec() {
+        session.shutdown();
+    }
+
+    static class Collecting implements Flow.Subscriber<Row> {
+        final long initial;
+        final Queue<Integer> values = new ConcurrentLinkedQueue<>();
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        Flow.Subscription subscription;
+
+        Collecting(long initial) { this.initial = initial; }
+
+        void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if(initial > 0) {
+                s.request(initial);
+            }
+        }
+
+        void onNext(Row row) { values << row.single(); }
+        void onError(Throwable t) { done.completeExceptionally(t); }
+        void onComplete() { done.complete(values.size()); }
+    }
+
+    def "Stream Everything"() {
+        setup:
+        def subscriber = new Collecting(Long.MAX_VALUE);
+        session.stream(series, [ 25_000 ]).subscribe(subscriber);
+
+        expect:
+        subscriber.done.get(10, TimeUnit.SECONDS) == 25_000;
+        subscriber.values.toList() == (1..25_000).toList();
+    }
+
+    def "Delivery Stops Without Demand"() {
+        setup:
+        def subscriber = new Collecting(10);
+        session.stream(series, [ 25_000 ]).subscribe(subscriber);
+
+        when:
+        Thread.sleep(250);
+
+        then:
+        subscriber.values.size() == 10;
+        !subscriber.done.isDone();
+
+        when:
+        subscriber.subscription.request(90);
+        Thread.sleep(250);
+
+        then:
+        subscriber.values.size() == 100;
+        !subscriber.done.isDone();
+
+        when:
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        then:
+        subscriber.done.get(10, TimeUnit.SECONDS) == 25_000;
+        session.call(Task.Prepared.applyRows(series, [ 3 ], { Row r -> r.single(); })).get() == [1, 2, 3];
+    }
+
+    def "One At A Time From Inside onNext"() {
+        setup:
+        def subscriber = new Collecting(1) {
+            void onNext(Row row) {
+                super.onNext(row);
+                subscription.request(1);
+            }
+        };
+
+        session.stream(series, [ 5_000 ]).subscribe(subscriber);
+
+        expect:
+        subscriber.done.get(10, TimeUnit.SECONDS) == 5_000;
+    }
+
+    def "Cancel Drains And Frees Channel"() {
+        setup:
+        def subscriber = new Collecting(5) {
+            void onNext(Row row) {
+                super.onNext(row);
+                if(values.size() == 5) {
+                    subscription.cancel();
+                }
+            }
+        };
+
+        def task = Task.Prepared.stream(series, [ 10_000 ], subscriber);
+        def count = session.call(task).get(10, TimeUnit.SECONDS);
+
+        expect:
+        count == 5;
+        task.cancelled;
+        subscriber.done.get() == 5;
+        session.call(Task.Prepared.applyRows(series, [ 2 ], { Row r -> r.single(); })).get() == [1, 2];
+    }
+
+    def "Cancel Stops The Query On The Server"() {
+        setup:
+        def subscriber = new Collecting(5) {
+            void onNext(Row row) {
+                super.onNext(row);
+                if(values.size() == 5) {
+                    subscription.cancel();
+                }
+            }
+        };
+
+        def task = Task.Prepared.stream('select generate_series(1, $1);', [ 2_000_000_000 ], subscriber);
+        def count = session.call(task).get(10, TimeUnit.SECONDS);
+
+        expect:
+        count == 5;
+        subscriber.done.get() == 5;
+        session.call(Task.Prepared.applyRows(series, [ 2 ], { Row r -> r.single(); })).get() == [1, 2];
+    }
+
+    def "Errors Reach Subscriber"() {
+        setup:
+        def subscriber = new Collecting(1);
+        session.stream('select * from no_such_table;').subscribe(subscriber);
+
+        when:
+        subscriber.done.get(10, TimeUnit.SECONDS);
+
+        then:
+        Exception e = thrown();
+        e.cause instanceof PostgresqlException;
+    }
+}
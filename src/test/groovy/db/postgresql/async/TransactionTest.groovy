@@ -99,4 +99,53 @@ class TransactionTest extends Specification {
         then:
         newSize == size;
     }
+
+    private static long numerals() {
+        return session.call(applyRows('select count(*) from numerals;') { row -> row.single(); }).get()[0];
+    }
+
+    def "Pipelined Transaction"() {
+        setup:
+        def e = session(transaction(new Expando()).pipelined()
+                        << { e -> count('insert into numerals (arabic, roman) values ($1,$2);', [ 21, 'xxi' ]) { num -> e.inserted = num; } }
+                        << { e -> acceptRows('select count(*) from numerals;') { row -> e.during = row.single(); } }
+                        << { e -> count('delete from numerals where id > $1;', [ 20 ]) { num -> e.deleted = num; } }).get();
+        def after = numerals();
+
+        expect:
+        e.inserted == 1;
+        e.during == 21;
+        e.deleted == 1;
+        after == 20;
+    }
+
+    def "Pipelined Failure Rolls Back Everything"() {
+        setup:
+        def size = numerals();
+
+        when:
+        session(transaction(null).pipelined()
+                << { count('insert into numerals (arabic, roman) values ($1,$2);', [ 21, 'xxi' ]) }
+                << { count('insert into no_such_table (arabic) values ($1);', [ 22 ]) }
+                << { count('insert into numerals (arabic, roman) values ($1,$2);', [ 23, 'xxiii' ]) }).get();
+
+        then:
+        java.util.concurrent.ExecutionException ex = thrown();
+        ex.cause instanceof PostgresqlException;
+        ex.cause.message.contains('no_such_table');
+        numerals() == size;
+    }
+
+    def "Pipelined Explicit Rollback"() {
+        setup:
+        def size = numerals();
+
+        when:
+        session(transaction(null).pipelined()
+                << { count('insert into numerals (arabic, roman) values ($1,$2);', [ 21, 'xxi' ]) }
+                << { rollback(); }).get();
+
+        then:
+        numerals() == size;
+    }
 }
@@ -8,6 +8,7 @@ import db.postgresql.async.types.*;
 import db.postgresql.async.*;
 import db.postgresql.async.enums.*;
 import java.time.*;
+import java.util.concurrent.TimeUnit;
 import static db.postgresql.async.Task.*;
 import static db.postgresql.async.Task.Prepared.*;
 
@@ -409,6 +410,53 @@ class TypeLoadTest extends Specification {
         e.found[2] == multiString;
     }
 
+    def "Primitive Arrays"() {
+        setup:
+        def sql = 'select array[1, 2, 3]::int4[] as i4, array[1, 2]::int8[] as i8, ' +
+            'array[1.5, 2.5]::float4[] as f4, array[[1.5, 2.5], [3.5, 4.5]]::float8[] as f8, ' +
+            'array[1, 2]::int2[] as i2, array[true, false]::bool[] as b, ' +
+            'array[1, null, 3]::int4[] as nulls, array(select i::float8 from generate_series(1, 10000) i) as big, ' +
+            '\'{}\'::int4[] as no_ints, \'{}\'::text[] as no_strings;';
+        def e = session.call(applyRows(sql, NO_ARGS, { Row r ->
+            def x = r.extractor();
+            [ x.intArrayAt('i4'), x.longArrayAt('i8'), x.floatArrayAt('f4'), x.arrayAt('f8', double.class),
+              x.shortArrayAt('i2'), x.booleanArrayAt('b'), x.intArrayAt('nulls'), x.doubleArrayAt(7),
+              x.intArrayAt('no_ints'), x.arrayAt('no_strings', String.class) ]; })).get()[0];
+
+        expect:
+        e[0] == [ 1, 2, 3 ] as int[];
+        e[1] == [ 1L, 2L ] as long[];
+        e[2] == [ 1.5f, 2.5f ] as float[];
+        e[3] == [ [ 1.5d, 2.5d ], [ 3.5d, 4.5d ] ] as double[][];
+        e[4] == [ 1, 2 ] as short[];
+        e[5] == [ true, false ] as boolean[];
+        e[6] == [ 1, 0, 3 ] as int[];
+        e[7].length == 10_000;
+        e[7].sum() == 50_005_000d;
+        e[8] == [] as int[];
+        e[9] == [] as String[];
+    }
+
+    def "Primitive Array And Buffer Parameters"() {
+        setup:
+        int[] ids = (1..2000) as int[];
+        def sql = 'select count(*)::int4, sum(i)::int8 from generate_series(1, 5000) i where i = any($1);';
+        def count = { arg -> session.call(applyRows(sql, [ arg ], { Row r -> r.toList(); })).get()[0]; };
+        java.nio.IntBuffer ints = java.nio.IntBuffer.wrap(ids, 100, 50);
+        def echo = { arg, type ->
+            session.call(applyRows("select \$1::${type};".toString(), [ arg ], { Row r -> r.single(); })).get()[0]; };
+
+        expect:
+        count(ids) == [ 2000, 2001000L ];
+        count(ints) == [ 50, (101..150).sum() as long ];
+        count(ints) == [ 50, (101..150).sum() as long ];
+        ints.position() == 100;
+        echo(java.nio.LongBuffer.wrap([ 1L, 2L ] as long[]), 'int8[]') == [ 1L, 2L ] as Long[];
+        echo(java.nio.DoubleBuffer.wrap([ 1.5d ] as double[]), 'float8[]') == [ 1.5d ] as Double[];
+        echo([ [ 1L, 2L ], [ 3L, 4L ] ] as long[][], 'int8[]') == [ [ 1L, 2L ], [ 3L, 4L ] ] as Long[][];
+        echo([ 2.5f ] as float[], 'float4[]') == [ 2.5f ] as Float[];
+    }
+
     def "Record"() {
         setup:
         def numbers = { e ->
@@ -427,6 +475,137 @@ class TypeLoadTest extends Specification {
         e.person instanceof Record;
     }
 
+    def "Types Are Loaded On First Use"() {
+        setup:
+        def registry = session.sessionInfo.registry;
+        session.call(Simple.noOutput("create type lazy_pair as (a int4, b text); " +
+                                     "create domain lazy_positive as int4 check (value > 0); " +
+                                     "create type lazy_mood as enum ('up', 'down');")).get();
+        def sql = "select row(1, 'x')::lazy_pair, 5::lazy_positive, 'up'::lazy_mood;";
+
+        when:
+        def before = registry.pgType('public.lazy_pair');
+        def futures = (1..4).collect { session.call(applyRows(sql, NO_ARGS, { Row r -> r.toList(); })); };
+        def results = futures.collect { f -> f.get()[0]; };
+
+        then:
+        before == null;
+        registry.pgType('public.lazy_pair') instanceof db.postgresql.async.pginfo.PgType;
+        results.every { row ->
+            row[0] instanceof Record && row[0].keysValues() == [ a: 1, b: 'x' ] && row[1] == 5 && row[2] == 'up'; };
+
+        cleanup:
+        session.call(Simple.noOutput("drop type lazy_pair; drop domain lazy_positive; drop type lazy_mood;")).get();
+    }
+
+    def "Domains Over Domains Are Loaded Together"() {
+        setup:
+        session.call(Simple.noOutput("create domain lazy_d1 as int4; create domain lazy_d2 as lazy_d1; " +
+                                     "create type lazy_dpair as (a lazy_d1, b lazy_d2);")).get();
+        def sql = "select 1::lazy_d1, 2::lazy_d2, row(3, 4)::lazy_dpair;";
+
+        when:
+        def row = session.call(applyRows(sql, NO_ARGS, { Row r -> r.toList(); })).get(10, TimeUnit.SECONDS)[0];
+
+        then:
+        row[0] == 1;
+        row[1] == 2;
+        row[2].keysValues() == [ a: 3, b: 4 ];
+        session.sessionInfo.registry.pgType('public.lazy_d2') instanceof db.postgresql.async.pginfo.PgType;
+
+        cleanup:
+        session.call(Simple.noOutput("drop type lazy_dpair; drop domain lazy_d2; drop domain lazy_d1;")).get();
+    }
+
+    def "Statements Whose Types Fail To Load Are Prepared Again"() {
+        setup:
+        Session single = Helper.basic().with { user 'noauth'; toSession(); };
+        single.sessionInfo.registry.loadTypes(single);
+        session.call(Simple.noOutput("create type lazy_fail as (a int4, b text);")).get();
+        def sql = "select row(1, 'x')::lazy_fail;";
+        def catalog = single.@catalog;
+
+        when:
+        catalog.shutdown();
+        single.call(applyRows(sql, NO_ARGS, { Row r -> r.single(); })).get(10, TimeUnit.SECONDS);
+
+        then:
+        java.util.concurrent.ExecutionException ex = thrown();
+        ex.cause.message.contains('shutting down');
+
+        when:
+        catalog.@shuttingDown = false;
+        catalog.@busy.set(false);
+        def record = single.call(applyRows(sql, NO_ARGS, { Row r -> r.single(); })).get(10, TimeUnit.SECONDS)[0];
+
+        then:
+        record.keysValues() == [ a: 1, b: 'x' ];
+
+        cleanup:
+        single?.shutdown();
+        session.call(Simple.noOutput("drop type lazy_fail;")).get();
+    }
+
+    def "Attributes Of Mapped Types Are Loaded Up Front"() {
+        setup:
+        session.call(Simple.noOutput("create domain load_d as int4; create type load_inner as (x int4); " +
+                                     "create type load_outer as (a load_d, b load_inner);")).get();
+        Session mapped = Helper.basic().with {
+            user 'noauth';
+            mapping Record, 'public.load_outer', Record.&write, Record.&read;
+            toSession(); };
+        mapped.sessionInfo.registry.loadTypes(mapped);
+
+        when:
+        def record = mapped.call(applyRows("select row(1, row(2))::load_outer;", NO_ARGS, { Row r -> r.single(); })).get()[0];
+
+        then:
+        mapped.sessionInfo.registry.pgType('public.load_d') instanceof db.postgresql.async.pginfo.PgType;
+        mapped.sessionInfo.registry.pgType('public.load_inner') instanceof db.postgresql.async.pginfo.PgType;
+        record.keysValues().a == 1;
+        record.keysValues().b.keysValues() == [ x: 2 ];
+
+        cleanup:
+        mapped?.shutdown();
+        session.call(Simple.noOutput("drop type load_outer; drop type load_inner; drop domain load_d;")).get();
+    }
+
+    def "Types Are Loaded From A Snapshot"() {
+        setup:
+        File file = File.createTempFile('types', '.snapshot');
+        file.delete();
+        session.call(Simple.noOutput("create type snap_pair as (a int4, b text);")).get();
+        def sql = "select row(1, 'x')::snap_pair;";
+        def open = { -> Helper.basic().with { user 'noauth'; toSession(); }; };
+        Session first = open();
+        boolean firstCurrent = first.sessionInfo.registry.loadTypes(first, file).get();
+        first.call(applyRows(sql, NO_ARGS, { Row r -> r.single(); })).get();
+        first.sessionInfo.registry.saveTypes(file);
+
+        when:
+        Session second = open();
+        def secondFuture = second.sessionInfo.registry.loadTypes(second, file);
+        def loaded = second.sessionInfo.registry.pgType('public.snap_pair');
+        boolean secondCurrent = secondFuture.get();
+        session.call(Simple.noOutput("drop type snap_pair; create type snap_pair as (a int4, b text, c int4);")).get();
+        Session third = open();
+        boolean thirdCurrent = third.sessionInfo.registry.loadTypes(third, file).get();
+        def refreshed = third.sessionInfo.registry.pgType('public.snap_pair');
+
+        then:
+        !firstCurrent;
+        secondCurrent;
+        loaded instanceof db.postgresql.async.pginfo.PgType;
+        !thirdCurrent;
+        refreshed == null;
+        third.call(applyRows("select row(1, 'x', 2)::snap_pair;", NO_ARGS, { Row r -> r.single(); })).get()[0].keysValues() == [ a: 1, b: 'x', c: 2 ];
+
+        cleanup:
+        [ first, second, third ].each { s -> s?.shutdown(); };
+        session.call(Simple.noOutput("drop type snap_pair;")).get();
+        file.delete();
+    }
+
     def "Ranges"() {
         setup:
         def original = [ 1, new Range.Int4(Range.Bound.INCLUSIVE, 2, 21, Range.Bound.EXCLUSIVE) ];
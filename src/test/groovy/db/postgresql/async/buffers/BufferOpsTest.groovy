@@ -33,4 +33,5 @@ class BufferOpsTest extends Specification {
         buffer.capacity() == BufferOps.ALLOWED[1];
         !buffer.direct;
     }
+
 }
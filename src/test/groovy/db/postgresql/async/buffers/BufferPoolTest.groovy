@@ -0,0 +1,70 @@
+package db.postgresql.async.buffers;
+
+import spock.lang.*;
+import db.postgresql.async.*;
+import java.nio.ByteBuffer;
+
+class BufferPoolTest extends Specification {
+
+    def "Borrow And Give Back"() {
+        setup:
+        BufferPool pool = new BufferPool(false, 1_000_000);
+        ByteBuffer first = pool.borrow(5_000);
+        first.putInt(1);
+        pool.giveBack(first);
+        ByteBuffer second = pool.borrow(8_000);
+
+        expect:
+        first.capacity() == 8192;
+        second.is(first);
+        second.position() == 0;
+        pool.borrows == 2;
+        pool.allocations == 1;
+        pool.returns == 1;
+        pool.pooledBytes == 0;
+    }
+
+    def "Size Classes Are Separate"() {
+        setup:
+        BufferPool pool = new BufferPool(false, 1_000_000);
+        pool.giveBack(pool.borrow(4096));
+        ByteBuffer bigger = pool.borrow(4097);
+
+        expect:
+        bigger.capacity() == 8192;
+        pool.allocations == 2;
+        pool.pooledBytes == 4096;
+    }
+
+    def "Discards Past Max Bytes"() {
+        setup:
+        BufferPool pool = new BufferPool(false, 100_000);
+        pool.giveBack(ByteBuffer.allocate(65_536));
+        pool.giveBack(ByteBuffer.allocate(65_536));
+        pool.giveBack(ByteBuffer.allocateDirect(4096));
+        pool.giveBack(ByteBuffer.allocate(5000));
+
+        expect:
+        pool.returns == 1;
+        pool.discards == 3;
+        pool.pooledBytes == 65_536;
+    }
+
+    def "Large Rows Borrow From Session Pool"() {
+        setup:
+        Session session = Helper.noAuthLoadTypes();
+        BufferPool pool = session.bufferPool;
+        long before = pool.borrows;
+        def values = session.call(Task.Simple.applyRows("select repeat('x', 1000000);", { Row r -> r.single(); })).get();
+
+        expect:
+        values[0].length() == 1_000_000;
+        pool.borrows > before;
+        pool.pooledBytes >= 1_048_576;
+        session.call(Task.Simple.applyRows("select repeat('y', 10);", { Row r -> r.single(); })).get() == ['y' * 10];
+        pool.pooledBytes >= 1_048_576;
+
+        cleanup:
+        session.shutdown();
+    }
+}
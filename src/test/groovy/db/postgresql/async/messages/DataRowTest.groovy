@@ -0,0 +1,90 @@
+package db.postgresql.async.messages;
+
+import spock.lang.*;
+import db.postgresql.async.serializers.SerializationContext;
+import java.nio.ByteBuffer;
+
+class DataRowTest extends Specification {
+
+    static final int INT4 = 23;
+    static final int COLUMNS = 80;
+
+    static RowDescription description(int columns) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * columns);
+        buffer.put((byte) 'T').putInt(0).putShort((short) columns);
+        columns.times { i ->
+            buffer.put("c${i}".getBytes('US-ASCII')).put((byte) 0);
+            buffer.putInt(0).putShort((short) 0).putInt(INT4).putShort((short) 4).putInt(-1).putShort((short) 1); };
+        buffer.putInt(1, buffer.position() - 1);
+        buffer.flip();
+        return new RowDescription(buffer);
+    }
+
+    static ByteBuffer row(int columns, Closure<Integer> value) {
+        ByteBuffer buffer = ByteBuffer.allocate(7 + 8 * columns);
+        buffer.put((byte) 'D').putInt(0).putShort((short) columns);
+        columns.times { i ->
+            Integer val = value(i);
+            if(val == null) { buffer.putInt(-1); }
+            else { buffer.putInt(4).putInt(val); } };
+        buffer.putInt(1, buffer.position() - 1);
+        buffer.flip();
+        return buffer;
+    }
+
+    def setup() {
+        SerializationContext.description(description(COLUMNS));
+    }
+
+    def "Random Access"() {
+        setup:
+        ByteBuffer buffer = row(COLUMNS, { i -> i * 10 });
+        DataRow dataRow = new DataRow(buffer);
+        def extractor = dataRow.extractor();
+
+        expect:
+        extractor.intAt(79) == 790;
+        extractor.intAt(3) == 30;
+        extractor.intAt('c42') == 420;
+        extractor.intAt(0) == 0;
+        dataRow.iterator().nextInt() == 0;
+    }
+
+    def "Random Access With Nulls"() {
+        setup:
+        DataRow dataRow = new DataRow(row(COLUMNS, { i -> (i % 3 == 0) ? null : i }));
+        def extractor = dataRow.extractor();
+
+        expect:
+        extractor.stringAt(3) == null;
+        extractor.intAt(4) == 4;
+        extractor.intAt(77) == 77;
+    }
+
+    def "Rows Are Independent"() {
+        setup:
+        DataRow first = new DataRow(row(COLUMNS, { i -> i }));
+        int firstValue = first.extractor().intAt(50);
+        first.finish();
+        DataRow second = new DataRow(row(COLUMNS, { i -> (i == 1) ? null : -i }));
+
+        expect:
+        firstValue == 50;
+        second.extractor().intAt(50) == -50;
+    }
+
+    def "Detached Rows Keep Their Data"() {
+        setup:
+        ByteBuffer buffer = row(COLUMNS, { i -> i + 1 });
+        DataRow dataRow = new DataRow(buffer);
+        DataRow detached = dataRow.detach();
+        dataRow.finish();
+        buffer.clear();
+        while(buffer.hasRemaining()) { buffer.put((byte) 0); }
+        new DataRow(row(COLUMNS, { i -> 0 })).extractor().intAt(10);
+
+        expect:
+        detached.extractor().intAt(10) == 11;
+        detached.extractor().intAt('c79') == 80;
+    }
+}
@@ -0,0 +1,76 @@
+package db.postgresql.async.messages;
+
+import spock.lang.*;
+import db.postgresql.async.Mapping;
+import db.postgresql.async.pginfo.*;
+import java.nio.ByteBuffer;
+
+class RowDescriptionTest extends Specification {
+
+    static RowDescription description(List<String> names) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * names.size() + 7);
+        buffer.put((byte) 'T').putInt(0).putShort((short) names.size());
+        names.each { name ->
+            buffer.put(name.getBytes('US-ASCII')).put((byte) 0);
+            buffer.putInt(0).putShort((short) 0).putInt(23).putShort((short) 4).putInt(-1).putShort((short) 0); };
+        buffer.putInt(1, buffer.position() - 1);
+        buffer.flip();
+        return new RowDescription(buffer);
+    }
+
+    def "Index Of Every Column"() {
+        setup:
+        def names = (0..<200).collect { "column_${it}".toString() };
+        RowDescription rd = description(names);
+
+        expect:
+        names.every { rd.indexOf(it) == names.indexOf(it) };
+        names.every { rd.toBinary().indexOf(it) == names.indexOf(it) };
+    }
+
+    def "First Duplicate Wins"() {
+        setup:
+        RowDescription rd = description(['id', 'name', 'id', 'count']);
+
+        expect:
+        rd.indexOf('id') == 0;
+        rd.indexOf('name') == 1;
+        rd.indexOf('count') == 3;
+    }
+
+    def "Unknown Names"() {
+        when:
+        description(['id']).indexOf('missing');
+
+        then:
+        thrown(IllegalArgumentException);
+
+        when:
+        RowDescription.EMPTY.indexOf('id');
+
+        then:
+        thrown(IllegalArgumentException);
+    }
+
+    def "Decoders Are Built Once Per Registry Version"() {
+        setup:
+        PgTypeRegistry registry = new PgTypeRegistry();
+        RowDescription rd = description(['a', 'b']);
+        def missing = rd.decoders(registry);
+        Mapping.Reader reader = { int size, ByteBuffer b, int oid -> b.getInt(); } as Mapping.Reader;
+        registry.add(PgType.builder().oid(23).arrayId(1007).mapping(new Mapping(Integer, 'pg_catalog.int4', null, reader)).build());
+        def decoders = rd.decoders(registry);
+        ByteBuffer values = ByteBuffer.allocate(12).putInt(4).putInt(42).putInt(-1);
+        values.flip();
+
+        when:
+        missing[0].decode(values);
+
+        then:
+        thrown(UnsupportedOperationException);
+        !decoders.is(missing);
+        rd.decoders(registry).is(decoders);
+        decoders[0].decode(values) == 42;
+        decoders[1].decode(values) == null;
+    }
+}
@@ -0,0 +1,49 @@
+package db.postgresql.async.pginfo;
+
+import spock.lang.*;
+import db.postgresql.async.Mapping;
+import java.nio.IntBuffer;
+
+class PgTypeRegistryTest extends Specification {
+
+    static PgType type(int oid, int arrayId, Class type, String name) {
+        return PgType.builder().oid(oid).arrayId(arrayId).mapping(new Mapping(type, name, null, null)).build();
+    }
+
+    def "Oids Above And Below The Dense Range"() {
+        setup:
+        PgTypeRegistry registry = new PgTypeRegistry();
+        PgType int4 = type(23, 1007, Integer, 'pg_catalog.int4');
+        PgType user = type(70_000, -5, Long, 'public.big');
+        (1..100).each { i -> registry.add(type(20_000 + i, 30_000 + i, String, "public.t${i}".toString())); };
+        registry.add(int4).add(user);
+
+        expect:
+        registry.pgType(23).is(int4);
+        registry.pgType(1007).is(int4);
+        registry.pgType(70_000).is(user);
+        registry.pgType(-5).is(user);
+        registry.pgType(Integer.valueOf(23)).is(int4);
+        registry.pgType(20_050).name == 'public.t50';
+        registry.pgType(30_100).name == 'public.t100';
+        registry.pgType(0) == null;
+        registry.pgType(24) == null;
+        registry.pgType(70_001) == null;
+    }
+
+    def "Class Lookups Follow Changes"() {
+        setup:
+        PgTypeRegistry registry = new PgTypeRegistry();
+        def before = [ registry.pgType(Integer), registry.pgType(int[]), registry.pgType(IntBuffer) ];
+        PgType int4 = type(23, 1007, Integer, 'pg_catalog.int4');
+        registry.add(int4);
+
+        expect:
+        before == [ null, null, null ];
+        registry.pgType(Integer).is(int4);
+        registry.pgType(int[]).is(int4);
+        registry.pgType(Integer[][]).is(int4);
+        registry.pgType(IntBuffer.allocate(1).getClass()).is(int4);
+        registry.pgType(String) == null;
+    }
+}
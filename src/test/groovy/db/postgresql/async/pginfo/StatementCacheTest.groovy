@@ -0,0 +1,90 @@
+package db.postgresql.async.pginfo;
+
+import spock.lang.*;
+import db.postgresql.async.*;
+import db.postgresql.async.messages.FrontEndMessage;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+class StatementCacheTest extends Specification {
+
+    def statement(String id) {
+        new Statement(id, null, null);
+    }
+
+    def "Evicts Least Recently Used"() {
+        setup:
+        StatementCache cache = new StatementCache(2, new StatementCache.Stats());
+        cache.store('a', statement('_a'));
+        cache.store('b', statement('_b'));
+        cache.statement('a');
+        cache.store('c', statement('_c'));
+
+        expect:
+        cache.size() == 2;
+        cache.statement('b') == null;
+        cache.statement('a').id == '_a';
+        cache.statement('c').id == '_c';
+        cache.pendingCloses == 1;
+        cache.stats.evictions == 1;
+        cache.stats.hits == 3;
+        cache.stats.misses == 1;
+    }
+
+    def "Replaced Statements Are Closed"() {
+        setup:
+        StatementCache cache = new StatementCache();
+        cache.store('a', statement('_a1'));
+        cache.store('a', statement('_a2'));
+
+        expect:
+        cache.size() == 1;
+        cache.pendingCloses == 1;
+        cache.stats.evictions == 0;
+    }
+
+    def "Write Closes Until Full"() {
+        setup:
+        StatementCache cache = new StatementCache(1, new StatementCache.Stats());
+        (0..4).each { cache.store("q${it}", statement("_${it}")); };
+        FrontEndMessage fe = new FrontEndMessage(Charset.forName('UTF-8'));
+        fe.buffer = ByteBuffer.allocate(20);
+
+        expect:
+        cache.pendingCloses == 4;
+        cache.writeCloses(fe) == 2;
+        fe.buffer.position() == 18;
+        cache.pendingCloses == 2;
+    }
+
+    def "Server Side Statements Are Bounded"() {
+        setup:
+        Session session = new SessionInfo.Builder().with {
+            host Helper.host
+            port Helper.port
+            database Helper.database
+            user 'noauth'
+            statementCacheSize 2
+            toSession()
+        };
+        session.sessionInfo.registry.loadTypes(session);
+        //fill the cache so every statement below evicts one
+        (1..2).each { i -> session(Task.Prepared.applyRows("select ${i}::int4;", { Row r -> r.single(); })).get(); };
+        def missesBefore = session.statementCacheStats.misses;
+        def evictionsBefore = session.statementCacheStats.evictions;
+
+        when:
+        (1..5).each { i ->
+            2.times { session(Task.Prepared.applyRows("select description from items where id = ${i};", { Row r -> r.single(); })).get(); }; };
+        def prepared = session(Task.Simple.applyRows('select count(*) from pg_prepared_statements;', { Row r -> r.single(); })).get()[0];
+
+        then:
+        session.statementCacheStats.misses - missesBefore == 5;
+        session.statementCacheStats.hits >= 5;
+        session.statementCacheStats.evictions - evictionsBefore == 5;
+        (prepared as int) <= 3;
+
+        cleanup:
+        session.shutdown();
+    }
+}